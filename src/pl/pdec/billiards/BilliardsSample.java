@@ -2,16 +2,27 @@ package pl.pdec.billiards;
 
 import pl.pdec.billiards.components.Stick;
 import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsWarmup;
 import pl.pdec.billiards.logic.StickControllerRunnable;
+import pl.pdec.billiards.logic.TrajectoryPreviewRunnable;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
 
 public class BilliardsSample {
 
     public static void main(String... args) {
+        if (!Arrays.asList(args).contains("--no-warmup")) {
+            // compile the collision code before the first break instead of during it
+            PhysicsWarmup.warmUp(200, 2);
+        }
+
         int frameWidth = 800;
         int frameHeight = 800;
 
@@ -45,6 +56,36 @@ public class BilliardsSample {
         menuItemRestart.addActionListener(gameResetListener);
         menuMain.add(menuItemRestart);
 
+        JMenuItem menuItemUndo = new JMenuItem("Undo shot");
+        menuItemUndo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        menuItemUndo.addActionListener(e -> {
+            game.undo();
+            game.repaint();
+        });
+        menuMain.add(menuItemUndo);
+
+        JMenu menuEngine = new JMenu("Engine");
+        ButtonGroup engineGroup = new ButtonGroup();
+        for (PhysicsEngineType engineType : PhysicsEngineType.values()) {
+            JRadioButtonMenuItem menuItemEngine = new JRadioButtonMenuItem(engineType.getLabel(),
+                    engineType == game.getEngineType());
+            menuItemEngine.addActionListener(e -> {
+                game.setEngineType(engineType);
+                gameResetListener.reset();
+            });
+            engineGroup.add(menuItemEngine);
+            menuEngine.add(menuItemEngine);
+        }
+        menuMain.add(menuEngine);
+
+        JCheckBoxMenuItem menuItemHud = new JCheckBoxMenuItem("Performance HUD");
+        menuItemHud.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        menuItemHud.addActionListener(e -> {
+            game.getHud().setVisible(menuItemHud.isSelected());
+            game.repaint();
+        });
+        menuMain.add(menuItemHud);
+
         JMenuItem menuItemExit = new JMenuItem("Exit");
         menuItemExit.addActionListener(e -> System.exit(0));
         menuMain.add(menuItemExit);
@@ -73,11 +114,11 @@ public class BilliardsSample {
             double dt = 1 / 60.0;
             long currentTime = System.currentTimeMillis();
             long newTime = 0;
-            long frameTime = 0;
+            double frameTime = 0;
             while (true) {
                 if (!game.isGameEnded()) {
                     newTime = System.currentTimeMillis();
-                    frameTime = newTime - currentTime;
+                    frameTime = (newTime - currentTime) / 1000.0;
                     currentTime = newTime;
 
                     while (frameTime > 0.0) {
@@ -104,6 +145,7 @@ public class BilliardsSample {
         private Game game;
         private Stick stick;
         private StickControllerRunnable stickController = null;
+        private TrajectoryPreviewRunnable trajectoryPreview = null;
 
         public GameResetActionListener(Game game, Stick stick) {
             this.game = game;
@@ -114,12 +156,22 @@ public class BilliardsSample {
             if (stickController != null) {
                 stickController.shutdown();
             }
+            if (trajectoryPreview != null) {
+                trajectoryPreview.shutdown();
+            }
 
             game.reset();
 
             stickController = new StickControllerRunnable(game, stick, game.getWhiteBall());
             Thread stickThread = new Thread(stickController);
             stickThread.start();
+
+            trajectoryPreview = new TrajectoryPreviewRunnable(game.getTable(), game::copyBalls, stick,
+                    game.getWhiteBall(), stickController.getBaseVelocity());
+            game.setPreview(trajectoryPreview);
+            Thread previewThread = new Thread(trajectoryPreview);
+            previewThread.setDaemon(true);
+            previewThread.start();
         }
 
         @Override
@@ -1,22 +1,40 @@
 package pl.pdec.billiards;
 
 import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.PerformanceHud;
+import pl.pdec.billiards.components.Racks;
 import pl.pdec.billiards.components.Stick;
 import pl.pdec.billiards.components.Table;
-import pl.pdec.billiards.logic.GameMechanic;
+import pl.pdec.billiards.components.TableSnapshot;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.EventStream;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 public class Game extends JPanel {
-    private GameMechanic gameMechanic = null;
+    private PhysicsEngine gameMechanic = null;
+    private volatile PhysicsEngineType engineType = PhysicsEngineType.MECHANIC;
+    private final AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+    private final EventStream events = new EventStream(1024);
+    private volatile int lastSubsteps = 0;
     private Table table = null;
     private Set<Ball> balls = new HashSet<>();
+    private final PerformanceHud hud = new PerformanceHud(balls);
+    private final List<Ball> rack = new ArrayList<>();
+    // the position when the balls last came to rest, and the one before the last shot, for undo
+    private TableSnapshot atRest = null, shotStart = null;
+    private boolean moving = false;
     private Stick stick = null;
+    private DrawableInterface preview = null;
     private Ball whiteBall = null;
     private volatile boolean gameEnded = false;
 
@@ -28,75 +46,137 @@ public class Game extends JPanel {
         return balls;
     }
 
+    // copies of the balls on the table, taken under the lock integrate() removes pocketed balls with
+    public synchronized List<Ball> copyBalls() {
+        List<Ball> copies = new ArrayList<>(balls.size());
+        for (Ball ball : balls) {
+            copies.add(ball.copy());
+        }
+        return copies;
+    }
+
+    public PerformanceHud getHud() {
+        return hud;
+    }
+
+    public EventStream getEvents() {
+        return events;
+    }
+
     public Ball getWhiteBall() {
         return whiteBall;
     }
 
-    public void reset() {
+    public synchronized void reset() {
         if (gameMechanic != null) {
             gameMechanic.shutdown();
         }
         clearBalls();
         add9BallsGame();
+        atRest = TableSnapshot.of(table, rack);
+        shotStart = TableSnapshot.of(table, rack);
+        moving = false;
         gameEnded = false;
-        gameMechanic = new GameMechanic(table, balls);
+        gameMechanic = engineType.create(table, balls, true);
+        gameMechanic.setEventStream(events);
+    }
+
+    public PhysicsEngineType getEngineType() {
+        return engineType;
+    }
+
+    // takes effect on the next reset
+    public void setEngineType(PhysicsEngineType engineType) {
+        if (engineType == null) {
+            throw new RuntimeException("Engine type cannot be null");
+        }
+        this.engineType = engineType;
     }
 
     public void setStick(Stick stick) {
         this.stick = stick;
     }
 
+    public void setPreview(DrawableInterface preview) {
+        this.preview = preview;
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
     public void setTable(Table table) {
         this.table = table;
     }
 
     private void clearBalls() {
         this.balls.clear();
+        this.rack.clear();
     }
 
     private void add9BallsGame() {
-        int leadBallX = (int) (table.getX() + table.getWidth() / 2);
-        int leadBallY = (int) (table.getY() + table.getHeight() / 4);
-        Ball leadBall = new Ball(1, false, Color.RED, leadBallX, leadBallY);
-        this.balls.add(leadBall);
-
-        this.balls.add(new Ball(2, false, Color.RED,
-                leadBallX - Ball.DIMENSION / 2,
-                leadBallY - Ball.DIMENSION));
-        this.balls.add(new Ball(3, false, Color.RED,
-                leadBallX + Ball.DIMENSION / 2,
-                leadBallY - Ball.DIMENSION));
-
-        Ball middleBall = new Ball(4, false, Color.RED,
-                leadBallX,
-                leadBallY - Ball.DIMENSION * 2);
-        this.balls.add(middleBall);
-        this.balls.add(new Ball(5, false, Color.RED,
-                (int) (middleBall.getX() - Ball.DIMENSION),
-                (int) middleBall.getY()));
-        this.balls.add(new Ball(6, false, Color.RED,
-                (int) (middleBall.getX() + Ball.DIMENSION),
-                (int) middleBall.getY()));
-
-        this.balls.add(new Ball(7, false, Color.RED,
-                leadBallX - Ball.DIMENSION / 2,
-                (int) (middleBall.getY() - Ball.DIMENSION)));
-        this.balls.add(new Ball(8, false, Color.RED,
-                leadBallX + Ball.DIMENSION / 2,
-                (int) (middleBall.getY() - Ball.DIMENSION)));
-
-        this.balls.add(new Ball(9, false, Color.RED,
-                leadBallX,
-                (int) (middleBall.getY() - Ball.DIMENSION * 2)));
-
-        whiteBall = new Ball(0, true, Color.WHITE,
-                (int) (table.getX() + table.getWidth() / 2),
-                (int) (table.getY() + table.getHeight() - table.getHeight() / 4));
-        this.balls.add(whiteBall);
-    }
-
-    public void integrate(double t, double deltaTime) {
-        gameMechanic.integrate(t, deltaTime);
+        this.rack.addAll(Racks.nineBall(table));
+        this.balls.addAll(rack);
+        for (Ball ball : balls) {
+            if (ball.isWhite()) {
+                whiteBall = ball;
+            }
+        }
+    }
+
+    public synchronized void integrate(double t, double deltaTime) {
+        boolean measure = hud.isVisible();
+        long start = measure ? System.nanoTime() : 0;
+        int substeps = substepper.substeps(balls, deltaTime);
+        double substepTime = deltaTime / substeps;
+        for (int i = 0; i < substeps && !gameEnded; i++) {
+            gameMechanic.integrate(t + i * substepTime, substepTime);
+            removePocketedBalls();
+        }
+        lastSubsteps = substeps;
+        if (measure) {
+            hud.recordTick(System.nanoTime() - start, substeps);
+        }
+
+        boolean nowMoving = false;
+        for (Ball ball : balls) {
+            if (ball.getVelocity() > 0) {
+                nowMoving = true;
+                break;
+            }
+        }
+        if (moving && !nowMoving) {
+            shotStart.copyFrom(atRest);
+            atRest.captureBalls(rack);
+        }
+        moving = nowMoving;
+    }
+
+    // puts the balls back where they were before the last shot, or before the current one while it is running
+    public synchronized void undo() {
+        if (atRest == null) {
+            return;
+        }
+        TableSnapshot target = moving ? atRest : shotStart;
+        target.restore(rack);
+        if (target != atRest) {
+            atRest.copyFrom(target);
+        }
+        balls.clear();
+        for (Ball ball : rack) {
+            if (!ball.isInPocket()) {
+                balls.add(ball);
+            }
+        }
+        moving = false;
+        gameEnded = false;
+    }
+
+    public int getLastSubsteps() {
+        return lastSubsteps;
+    }
+
+    private void removePocketedBalls() {
         Iterator<Ball> it = balls.iterator();
         while (it.hasNext()) {
             Ball ball = it.next();
@@ -118,12 +198,18 @@ public class Game extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
+        boolean measure = hud.isVisible();
+        long start = measure ? System.nanoTime() : 0;
         super.paintComponent(g);
 
         if (table != null) {
             table.draw(g);
         }
 
+        if (preview != null) {
+            preview.draw(g);
+        }
+
         for (DrawableInterface item : balls) {
             item.draw(g);
         }
@@ -131,5 +217,10 @@ public class Game extends JPanel {
         if (stick != null) {
             stick.draw(g);
         }
+
+        if (measure) {
+            hud.draw(g);
+            hud.recordFrame(System.nanoTime() - start);
+        }
     }
 }
@@ -0,0 +1,337 @@
+package pl.pdec.billiards;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.components.TableSnapshot;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// many live tables as scaled tiles in one component. The tables share their geometry, so the cloth, cushions and
+// pockets are drawn once per tile size and every ball colour once as a sprite. A tile is redrawn from the latest
+// snapshot its match published, as often as its fastest ball needs to move about a pixel on screen, and the
+// redraws of one frame stop at the budget, the tiles left over go first in the next frame
+public class TournamentGrid extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int GAP = 4;
+    private static final int FRAME_MILLIS = 1000 / 60;
+    // tiles at rest only change when a ball is placed or the table is racked, a quarter second is soon enough
+    private static final long IDLE_NANOS = 250_000_000L;
+    private static final double PIXELS_PER_REFRESH = 1;
+
+    private final Table table;
+    private final long budgetNanos;
+    private final boolean adaptive;
+    private final List<Tile> tiles = new ArrayList<>();
+    private final Timer timer = new Timer(FRAME_MILLIS, e -> refresh());
+    private final Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private final LatencyRecorder refreshTimes = new LatencyRecorder(600);
+    private final LatencyRecorder paintTimes = new LatencyRecorder(600);
+
+    // touched only by the event dispatch thread, the layout and the art are rebuilt when the size changes
+    private final Map<Integer, BufferedImage> sprites = new HashMap<>();
+    private int laidOutWidth = -1, laidOutHeight = -1;
+    private int tileWidth = 0, tileHeight = 0, spriteSize = 0, labelBaseline = 0;
+    private double scale = 0;
+    private BufferedImage art = null;
+    private int[] order = new int[0];
+    private double[] overdue = new double[0];
+    private long tilesRendered = 0, tilesDeferred = 0;
+
+    public TournamentGrid(Table table) {
+        this(table, 8_000_000L, true);
+    }
+
+    // budgetNanos bounds the tile redraws of one frame; without adaptive every tile with a new snapshot is redrawn
+    // every frame, whatever it costs
+    public TournamentGrid(Table table, long budgetNanos, boolean adaptive) {
+        this.table = table;
+        this.budgetNanos = budgetNanos;
+        this.adaptive = adaptive;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        setBackground(Color.DARK_GRAY);
+    }
+
+    // every table shown has the geometry of the grid's table; add them all before start() or showing the grid
+    public Tile addTable(String name, Collection<Ball> balls) {
+        if (balls == null) {
+            throw new RuntimeException("Balls collection cannot be null");
+        }
+        Tile tile = new Tile(name, TableSnapshot.of(table, balls));
+        tiles.add(tile);
+        laidOutWidth = -1;
+        return tile;
+    }
+
+    public int getTableCount() {
+        return tiles.size();
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    public LatencyRecorder getRefreshTimes() {
+        return refreshTimes;
+    }
+
+    public LatencyRecorder getPaintTimes() {
+        return paintTimes;
+    }
+
+    public long getTilesRendered() {
+        return tilesRendered;
+    }
+
+    // tiles that were due but did not fit in the budget of their frame
+    public long getTilesDeferred() {
+        return tilesDeferred;
+    }
+
+    // one frame on the event dispatch thread: picks up the published snapshots and redraws the tiles that are due,
+    // most overdue first, until the budget is spent; the timer calls it, so does anyone driving the grid by hand
+    public void refresh() {
+        long start = System.nanoTime();
+        layOut();
+        int due = 0;
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            if (tile.take()) {
+                tile.pending = true;
+                tile.maxVelocity = maxVelocity(tile.snapshots[tile.front]);
+            }
+            if (!tile.pending) {
+                continue;
+            }
+            long interval = adaptive ? interval(tile.maxVelocity) : 0;
+            long waited = start - tile.renderedAt;
+            if (waited >= interval) {
+                order[due] = i;
+                overdue[due] = waited / (double) Math.max(interval, FRAME_MILLIS * 1_000_000L);
+                due++;
+            }
+        }
+        sortByOverdue(due);
+
+        int rendered = 0;
+        while (rendered < due && (rendered == 0 || !adaptive || System.nanoTime() - start < budgetNanos)) {
+            Tile tile = tiles.get(order[rendered++]);
+            render(tile);
+            tile.pending = false;
+            tile.renderedAt = start;
+            repaint(tile.x, tile.y, tileWidth, tileHeight);
+        }
+        tilesRendered += rendered;
+        tilesDeferred += due - rendered;
+        refreshTimes.record(System.nanoTime() - start);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        super.paintComponent(g);
+        layOut();
+        Rectangle clip = g.getClipBounds();
+        for (Tile tile : tiles) {
+            if (tile.image != null && (clip == null || clip.intersects(tile.x, tile.y, tileWidth, tileHeight))) {
+                g.drawImage(tile.image, tile.x, tile.y, null);
+            }
+        }
+        paintTimes.record(System.nanoTime() - start);
+    }
+
+    // as long as the fastest ball needs to cover a pixel on screen, a frame at least and the idle time at most
+    private long interval(double velocity) {
+        double pixelsPerSecond = velocity * scale;
+        if (pixelsPerSecond <= 0) {
+            return IDLE_NANOS;
+        }
+        return (long) Math.min(IDLE_NANOS, PIXELS_PER_REFRESH * 1e9 / pixelsPerSecond);
+    }
+
+    private static double maxVelocity(TableSnapshot snapshot) {
+        double max = 0;
+        for (int i = 0; i < snapshot.getBallCount(); i++) {
+            if (!snapshot.isInPocket(i)) {
+                max = Math.max(max, snapshot.getVelocity(i));
+            }
+        }
+        return max;
+    }
+
+    // insertion sort, there are a few dozen tiles and the order barely changes between frames
+    private void sortByOverdue(int count) {
+        for (int i = 1; i < count; i++) {
+            int index = order[i];
+            double key = overdue[i];
+            int j = i - 1;
+            while (j >= 0 && overdue[j] < key) {
+                order[j + 1] = order[j];
+                overdue[j + 1] = overdue[j];
+                j--;
+            }
+            order[j + 1] = index;
+            overdue[j + 1] = key;
+        }
+    }
+
+    // the column count that gives the largest tiles; the table art and the sprites are drawn again at the new scale
+    // and every tile once, so a resize never shows empty tiles
+    private void layOut() {
+        int width = getWidth(), height = getHeight();
+        if (width == laidOutWidth && height == laidOutHeight) {
+            return;
+        }
+        laidOutWidth = width;
+        laidOutHeight = height;
+        scale = 0;
+        int columns = 1;
+        for (int c = 1; c <= tiles.size(); c++) {
+            int rows = (tiles.size() + c - 1) / c;
+            double candidate = Math.min((width - GAP * (c + 1)) / (double) c / table.getWidth(),
+                    (height - GAP * (rows + 1)) / (double) rows / table.getHeight());
+            if (candidate > scale) {
+                scale = candidate;
+                columns = c;
+            }
+        }
+        tileWidth = (int) (table.getWidth() * scale);
+        tileHeight = (int) (table.getHeight() * scale);
+        order = new int[tiles.size()];
+        overdue = new double[tiles.size()];
+        sprites.clear();
+        for (Tile tile : tiles) {
+            if (tile.graphics != null) {
+                tile.graphics.dispose();
+            }
+            tile.image = null;
+            tile.graphics = null;
+        }
+        if (tileWidth < 1 || tileHeight < 1) {
+            art = null;
+            return;
+        }
+
+        art = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = art.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        labelBaseline = 2 + g.getFontMetrics(font).getAscent();
+        g.scale(scale, scale);
+        g.translate(-table.getX(), -table.getY());
+        table.draw(g);
+        g.dispose();
+        spriteSize = Math.max(2, (int) Math.round(Ball.DIMENSION * scale));
+
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            tile.x = GAP + (i % columns) * (tileWidth + GAP);
+            tile.y = GAP + (i / columns) * (tileHeight + GAP);
+            tile.image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+            tile.graphics = tile.image.createGraphics();
+            tile.graphics.setFont(font);
+            if (tile.take()) {
+                tile.maxVelocity = maxVelocity(tile.snapshots[tile.front]);
+            }
+            render(tile);
+            tile.pending = false;
+            tile.renderedAt = System.nanoTime();
+        }
+    }
+
+    private void render(Tile tile) {
+        if (tile.graphics == null) {
+            return;
+        }
+        Graphics2D g = tile.graphics;
+        g.drawImage(art, 0, 0, null);
+        TableSnapshot snapshot = tile.snapshots[tile.front];
+        double half = spriteSize / 2.0;
+        for (int i = 0; i < snapshot.getBallCount(); i++) {
+            if (!snapshot.isInPocket(i)) {
+                g.drawImage(sprite(snapshot.getRgb(i)),
+                        (int) Math.round((snapshot.getX(i) - table.getX()) * scale - half),
+                        (int) Math.round((snapshot.getY(i) - table.getY()) * scale - half), null);
+            }
+        }
+        if (tile.name != null) {
+            g.setColor(Color.WHITE);
+            g.drawString(tile.name, 4, labelBaseline);
+        }
+    }
+
+    private BufferedImage sprite(int rgb) {
+        BufferedImage sprite = sprites.get(rgb);
+        if (sprite == null) {
+            sprite = new BufferedImage(spriteSize, spriteSize, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = sprite.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(new Color(rgb, true));
+            g.fillOval(0, 0, spriteSize, spriteSize);
+            g.dispose();
+            sprites.put(rgb, sprite);
+        }
+        return sprite;
+    }
+
+    // one match on the grid. Its thread publishes into one of three snapshots and swaps it with the shared one, the
+    // event dispatch thread swaps the shared one out when it is newer than its own, so neither side ever waits or
+    // allocates and the painter always gets the latest complete position
+    public static final class Tile {
+        private static final int FRESH = 4;
+
+        private final String name;
+        private final TableSnapshot[] snapshots = new TableSnapshot[3];
+        // index of the shared snapshot, with FRESH set while the event dispatch thread has not taken it
+        private final AtomicInteger shared = new AtomicInteger(1);
+        private int back = 2;
+
+        // touched only by the event dispatch thread
+        private int front = 0;
+        private boolean pending = true;
+        private long renderedAt = 0;
+        private double maxVelocity = 0;
+        private int x, y;
+        private BufferedImage image;
+        private Graphics2D graphics;
+
+        private Tile(String name, TableSnapshot initial) {
+            this.name = name;
+            for (int i = 0; i < snapshots.length; i++) {
+                snapshots[i] = new TableSnapshot(initial.getBallCount(), initial.getSegmentCount());
+                snapshots[i].copyFrom(initial);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // the balls in the order the table was added with; call from one thread per tile
+        public void publish(Collection<Ball> balls) {
+            snapshots[back].captureBalls(balls);
+            back = shared.getAndSet(back | FRESH) & ~FRESH;
+        }
+
+        private boolean take() {
+            if ((shared.get() & FRESH) == 0) {
+                return false;
+            }
+            front = shared.getAndSet(front) & ~FRESH;
+            return true;
+        }
+    }
+}
@@ -11,59 +11,83 @@ public class Ball implements DrawableInterface {
     private final int number;
     private final boolean isWhite;
     private final Color color;
-    private double x, y;
-    private boolean isInPocket = false;
-    private volatile double velocity = 0;
-    private double[] directionVector = new double[2];
+    private final BallState state;
 
     public Ball(int number, boolean isWhite, Color color, int x, int y) {
         this.number = number;
         this.isWhite = isWhite;
         this.color = color;
-        this.x = x;
-        this.y = y;
+        this.state = new BallState(x, y);
     }
 
+    public Ball copy() {
+        Ball ball = new Ball(number, isWhite, color, 0, 0);
+        double[] values = new double[BallState.SIZE];
+        state.read(values);
+        ball.state.set(values[BallState.X], values[BallState.Y], values[BallState.DIRECTION_X],
+                values[BallState.DIRECTION_Y], values[BallState.VELOCITY], values[BallState.IN_POCKET] != 0);
+        return ball;
+    }
+
+    // for reading several fields consistently, see BallState.read
+    public BallState getState() {
+        return state;
+    }
+
+    // a consistent copy, changing it does not change the ball
     public double[] getDirection() {
-        return directionVector;
+        double[] values = new double[BallState.SIZE];
+        state.read(values);
+        return new double[]{values[BallState.DIRECTION_X], values[BallState.DIRECTION_Y]};
+    }
+
+    public double getDirectionX() {
+        return state.getDirectionX();
+    }
+
+    public double getDirectionY() {
+        return state.getDirectionY();
     }
 
     public void setDirection(double[] directionVector) {
-        this.directionVector = directionVector;
+        state.setDirection(directionVector[0], directionVector[1]);
     }
 
     public void setDirection(double x, double y) {
-        directionVector[0] = x;
-        directionVector[1] = y;
+        state.setDirection(x, y);
+    }
+
+    public double getVelocity() {
+        return state.getVelocity();
     }
 
-    synchronized public double getVelocity() {
-        return velocity;
+    public void setVelocity(double velocity) {
+        state.setVelocity(velocity);
     }
 
-    synchronized public void setVelocity(double velocity) {
-        this.velocity = velocity;
+    public void setPosition(double x, double y) {
+        state.setPosition(x, y);
     }
 
-    synchronized public void setPosition(double x, double y) {
-        this.x = x;
-        this.y = y;
+    public double getX() {
+        return state.getX();
     }
 
-    synchronized public double getX() {
-        return x;
+    public double getY() {
+        return state.getY();
     }
 
-    synchronized public double getY() {
-        return y;
+    public boolean isInPocket() {
+        return state.isInPocket();
     }
 
-    synchronized public boolean isInPocket() {
-        return isInPocket;
+    public void setIsInPocket() {
+        state.setInPocket(true);
     }
 
-    synchronized public void setIsInPocket() {
-        isInPocket = true;
+    // only for putting a ball back on the table, e.g. when a snapshot is restored
+    public void setIsInPocket(boolean isInPocket) {
+        state.setInPocket(isInPocket);
     }
 
     public int getNumber() {
@@ -74,10 +98,18 @@ public class Ball implements DrawableInterface {
         return isWhite;
     }
 
+    public Color getColor() {
+        return color;
+    }
+
     @Override
     public void draw(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
-        Ellipse2D.Double circle = new Ellipse2D.Double(x - DIMENSION / 2., y - DIMENSION / 2., DIMENSION, DIMENSION);
+        // x and y from the same update, the physics threads keep moving the ball while it is painted
+        double[] values = new double[BallState.SIZE];
+        state.read(values);
+        Ellipse2D.Double circle = new Ellipse2D.Double(values[BallState.X] - DIMENSION / 2.,
+                values[BallState.Y] - DIMENSION / 2., DIMENSION, DIMENSION);
 
         g2d.setColor(color);
         g2d.fill(circle);
@@ -0,0 +1,182 @@
+package pl.pdec.billiards.components;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// versioned ball state: writers take an odd version with a CAS and publish the next even one, readers retry
+// until they see the same even version before and after reading, so no reader ever blocks a writer
+public final class BallState {
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int DIRECTION_X = 2;
+    public static final int DIRECTION_Y = 3;
+    public static final int VELOCITY = 4;
+    public static final int IN_POCKET = 5;
+    public static final int SIZE = 6;
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(BallState.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long version = 0;
+    private double x, y;
+    private double directionX, directionY;
+    private double velocity;
+    private boolean inPocket;
+
+    public BallState(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public double getX() {
+        for (; ; ) {
+            long stamp = beginRead();
+            double value = x;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    public double getY() {
+        for (; ; ) {
+            long stamp = beginRead();
+            double value = y;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    public double getDirectionX() {
+        for (; ; ) {
+            long stamp = beginRead();
+            double value = directionX;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    public double getDirectionY() {
+        for (; ; ) {
+            long stamp = beginRead();
+            double value = directionY;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    public double getVelocity() {
+        for (; ; ) {
+            long stamp = beginRead();
+            double value = velocity;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    public boolean isInPocket() {
+        for (; ; ) {
+            long stamp = beginRead();
+            boolean value = inPocket;
+            if (validate(stamp)) {
+                return value;
+            }
+        }
+    }
+
+    // consistent copy of every field, indexed by the constants above; in pocket is 1 or 0
+    public void read(double[] target) {
+        for (; ; ) {
+            long stamp = beginRead();
+            target[X] = x;
+            target[Y] = y;
+            target[DIRECTION_X] = directionX;
+            target[DIRECTION_Y] = directionY;
+            target[VELOCITY] = velocity;
+            target[IN_POCKET] = inPocket ? 1 : 0;
+            if (validate(stamp)) {
+                return;
+            }
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setPosition(double x, double y) {
+        long stamp = beginWrite();
+        this.x = x;
+        this.y = y;
+        endWrite(stamp);
+    }
+
+    public void setDirection(double x, double y) {
+        long stamp = beginWrite();
+        this.directionX = x;
+        this.directionY = y;
+        endWrite(stamp);
+    }
+
+    public void setVelocity(double velocity) {
+        long stamp = beginWrite();
+        this.velocity = velocity;
+        endWrite(stamp);
+    }
+
+    public void setInPocket(boolean inPocket) {
+        long stamp = beginWrite();
+        this.inPocket = inPocket;
+        endWrite(stamp);
+    }
+
+    public void set(double x, double y, double directionX, double directionY, double velocity, boolean inPocket) {
+        long stamp = beginWrite();
+        this.x = x;
+        this.y = y;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.velocity = velocity;
+        this.inPocket = inPocket;
+        endWrite(stamp);
+    }
+
+    private long beginRead() {
+        long stamp;
+        while (((stamp = version) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return stamp;
+    }
+
+    private boolean validate(long stamp) {
+        // keeps the field reads above from moving past the second version read
+        VarHandle.acquireFence();
+        return version == stamp;
+    }
+
+    private long beginWrite() {
+        for (; ; ) {
+            long stamp = version;
+            if ((stamp & 1) == 0 && VERSION.compareAndSet(this, stamp, stamp + 1)) {
+                return stamp + 1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void endWrite(long stamp) {
+        VERSION.setRelease(this, stamp + 1);
+    }
+}
@@ -0,0 +1,171 @@
+package pl.pdec.billiards.components;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+public class BallStateBuffer {
+    public static final int MAGIC = 0x42414c4c;
+    public static final int HEADER_SIZE = 64;
+    public static final int STRIDE = 64;
+
+    // header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int TICK_OFFSET = 8;
+    private static final int TIME_OFFSET = 16;
+
+    // per ball layout
+    private static final int X = 0;
+    private static final int Y = 8;
+    private static final int DIRECTION_X = 16;
+    private static final int DIRECTION_Y = 24;
+    private static final int VELOCITY = 32;
+    private static final int FLAGS = 40;
+    private static final int NUMBER = 48;
+
+    private static final long IN_POCKET = 1;
+    private static final long WHITE = 2;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    private BallStateBuffer(ByteBuffer buffer, int capacity) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    public static BallStateBuffer allocate(int capacity) {
+        return new BallStateBuffer(ByteBuffer.allocateDirect(HEADER_SIZE + capacity * STRIDE), capacity);
+    }
+
+    // maps the state into a file so that recorders and other processes can read it without copying
+    public static BallStateBuffer map(Path file, int capacity) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * STRIDE);
+            return new BallStateBuffer(mapped, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return buffer.getInt(COUNT_OFFSET);
+    }
+
+    public long getTick() {
+        return buffer.getLong(TICK_OFFSET);
+    }
+
+    public double getTime() {
+        return buffer.getDouble(TIME_OFFSET);
+    }
+
+    public void setClock(long tick, double t) {
+        buffer.putLong(TICK_OFFSET, tick);
+        buffer.putDouble(TIME_OFFSET, t);
+    }
+
+    public void load(Collection<Ball> balls) {
+        if (balls.size() > capacity) {
+            throw new RuntimeException("Buffer holds " + capacity + " balls, got " + balls.size());
+        }
+        int i = 0;
+        for (Ball ball : balls) {
+            int offset = offset(i++);
+            buffer.putDouble(offset + X, ball.getX());
+            buffer.putDouble(offset + Y, ball.getY());
+            buffer.putDouble(offset + DIRECTION_X, ball.getDirectionX());
+            buffer.putDouble(offset + DIRECTION_Y, ball.getDirectionY());
+            buffer.putDouble(offset + VELOCITY, ball.getVelocity());
+            buffer.putLong(offset + FLAGS, (ball.isInPocket() ? IN_POCKET : 0) | (ball.isWhite() ? WHITE : 0));
+            buffer.putInt(offset + NUMBER, ball.getNumber());
+        }
+        buffer.putInt(COUNT_OFFSET, i);
+    }
+
+    public void copyTo(int index, Ball ball) {
+        ball.setPosition(getX(index), getY(index));
+        ball.setDirection(getDirectionX(index), getDirectionY(index));
+        ball.setVelocity(getVelocity(index));
+        if (isInPocket(index) && !ball.isInPocket()) {
+            ball.setIsInPocket();
+        }
+    }
+
+    public double getX(int index) {
+        return buffer.getDouble(offset(index) + X);
+    }
+
+    public double getY(int index) {
+        return buffer.getDouble(offset(index) + Y);
+    }
+
+    public void setPosition(int index, double x, double y) {
+        int offset = offset(index);
+        buffer.putDouble(offset + X, x);
+        buffer.putDouble(offset + Y, y);
+    }
+
+    public double getDirectionX(int index) {
+        return buffer.getDouble(offset(index) + DIRECTION_X);
+    }
+
+    public double getDirectionY(int index) {
+        return buffer.getDouble(offset(index) + DIRECTION_Y);
+    }
+
+    public void setDirection(int index, double x, double y) {
+        int offset = offset(index);
+        buffer.putDouble(offset + DIRECTION_X, x);
+        buffer.putDouble(offset + DIRECTION_Y, y);
+    }
+
+    public double getVelocity(int index) {
+        return buffer.getDouble(offset(index) + VELOCITY);
+    }
+
+    public void setVelocity(int index, double velocity) {
+        buffer.putDouble(offset(index) + VELOCITY, velocity);
+    }
+
+    public boolean isInPocket(int index) {
+        return (buffer.getLong(offset(index) + FLAGS) & IN_POCKET) != 0;
+    }
+
+    public void setInPocket(int index) {
+        int offset = offset(index);
+        buffer.putLong(offset + FLAGS, buffer.getLong(offset + FLAGS) | IN_POCKET);
+    }
+
+    public boolean isWhite(int index) {
+        return (buffer.getLong(offset(index) + FLAGS) & WHITE) != 0;
+    }
+
+    public int getNumber(int index) {
+        return buffer.getInt(offset(index) + NUMBER);
+    }
+
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * STRIDE;
+    }
+}
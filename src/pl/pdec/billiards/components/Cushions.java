@@ -0,0 +1,175 @@
+package pl.pdec.billiards.components;
+
+import java.util.Arrays;
+
+public class Cushions {
+    private static final double EPSILON = 1e-9;
+
+    private final double[] segments;
+    private final double originX, originY;
+    private final double cellSize;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    public Cushions(double[] segments, double cellSize) {
+        if (segments == null || segments.length == 0 || segments.length % 4 != 0) {
+            throw new RuntimeException("Segments must be given as x1, y1, x2, y2 quadruples");
+        }
+        if (cellSize <= 0) {
+            throw new RuntimeException("Cell size must be positive");
+        }
+        this.segments = segments.clone();
+        this.cellSize = cellSize;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < segments.length; i += 2) {
+            minX = Math.min(minX, segments[i]);
+            maxX = Math.max(maxX, segments[i]);
+            minY = Math.min(minY, segments[i + 1]);
+            maxY = Math.max(maxY, segments[i + 1]);
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        // static grid in compressed rows: cellStart[c]..cellStart[c + 1] indexes cellSegments
+        int[] counts = new int[columns * rows + 1];
+        forEachCell(counts, null);
+        cellStart = new int[columns * rows + 1];
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] = cellStart[c] + counts[c];
+        }
+        cellSegments = new int[cellStart[columns * rows]];
+        forEachCell(Arrays.copyOf(cellStart, cellStart.length), cellSegments);
+    }
+
+    public static Cushions rectangle(double x, double y, double width, double height) {
+        return rectangle(x, y, width, height, 2 * Ball.DIMENSION);
+    }
+
+    public static Cushions rectangle(double x, double y, double width, double height, double cellSize) {
+        return polygons(cellSize, new double[]{x, y, x + width, y, x + width, y + height, x, y + height});
+    }
+
+    public static Cushions polygons(double[]... polygons) {
+        return polygons(2 * Ball.DIMENSION, polygons);
+    }
+
+    // cells of about two ball diameters keep the cells a substep crosses to a handful
+    public static Cushions polygons(double cellSize, double[]... polygons) {
+        int count = 0;
+        for (double[] polygon : polygons) {
+            if (polygon.length < 4 || polygon.length % 2 != 0) {
+                throw new RuntimeException("Polygon must be given as at least two x, y pairs");
+            }
+            count += polygon.length / 2;
+        }
+        double[] segments = new double[count * 4];
+        int i = 0;
+        for (double[] polygon : polygons) {
+            int points = polygon.length / 2;
+            for (int p = 0; p < points; p++) {
+                int next = (p + 1) % points;
+                segments[i++] = polygon[p * 2];
+                segments[i++] = polygon[p * 2 + 1];
+                segments[i++] = polygon[next * 2];
+                segments[i++] = polygon[next * 2 + 1];
+            }
+        }
+        return new Cushions(segments, cellSize);
+    }
+
+    public int size() {
+        return segments.length / 4;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public double getSegment(int index, int coordinate) {
+        return segments[index * 4 + coordinate];
+    }
+
+    // hit receives: fraction of the path travelled, hit point x, y and the unit normal facing the ball
+    public boolean firstHit(double x0, double y0, double x1, double y1, double[] hit) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int minColumn = column(Math.min(x0, x1));
+        int maxColumn = column(Math.max(x0, x1));
+        int minRow = row(Math.min(y0, y1));
+        int maxRow = row(Math.max(y0, y1));
+
+        double best = Double.MAX_VALUE;
+        int bestSegment = -1;
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int s = cellSegments[k] * 4;
+                    double ex = segments[s + 2] - segments[s];
+                    double ey = segments[s + 3] - segments[s + 1];
+                    double denominator = dx * ey - dy * ex;
+                    if (Math.abs(denominator) < EPSILON) {
+                        continue;
+                    }
+                    double qx = segments[s] - x0;
+                    double qy = segments[s + 1] - y0;
+                    double t = (qx * ey - qy * ex) / denominator;
+                    double u = (qx * dy - qy * dx) / denominator;
+                    if (t > EPSILON && t <= 1 && u >= 0 && u <= 1 && t < best) {
+                        best = t;
+                        bestSegment = s;
+                    }
+                }
+            }
+        }
+        if (bestSegment < 0) {
+            return false;
+        }
+
+        double ex = segments[bestSegment + 2] - segments[bestSegment];
+        double ey = segments[bestSegment + 3] - segments[bestSegment + 1];
+        double length = Math.sqrt(ex * ex + ey * ey);
+        double nx = -ey / length;
+        double ny = ex / length;
+        if (nx * dx + ny * dy > 0) {
+            nx = -nx;
+            ny = -ny;
+        }
+        hit[0] = best;
+        hit[1] = x0 + dx * best;
+        hit[2] = y0 + dy * best;
+        hit[3] = nx;
+        hit[4] = ny;
+        return true;
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - originX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - originY) / cellSize)));
+    }
+
+    private void forEachCell(int[] cursor, int[] target) {
+        for (int s = 0; s < segments.length / 4; s++) {
+            double x1 = segments[s * 4], y1 = segments[s * 4 + 1];
+            double x2 = segments[s * 4 + 2], y2 = segments[s * 4 + 3];
+            for (int r = row(Math.min(y1, y2)); r <= row(Math.max(y1, y2)); r++) {
+                for (int c = column(Math.min(x1, x2)); c <= column(Math.max(x1, x2)); c++) {
+                    int cell = r * columns + c;
+                    if (target == null) {
+                        cursor[cell]++;
+                    } else {
+                        target[cursor[cell]++] = s;
+                    }
+                }
+            }
+        }
+    }
+}
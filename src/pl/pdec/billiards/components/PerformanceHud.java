@@ -0,0 +1,159 @@
+package pl.pdec.billiards.components;
+
+import pl.pdec.billiards.DrawableInterface;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+
+import java.awt.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PerformanceHud implements DrawableInterface {
+    private static final int FRAME_SAMPLES = 120;
+    private static final long SYSTEM_SAMPLE_INTERVAL = 500_000_000L;
+
+    private final Collection<Ball> balls;
+    private final LatencyRecorder tickTimes = new LatencyRecorder(600);
+    private final LatencyRecorder paintTimes = new LatencyRecorder(FRAME_SAMPLES);
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong substeps = new AtomicLong();
+    private volatile boolean visible = false;
+
+    // touched only by the event dispatch thread
+    private final long[] frameTimes = new long[FRAME_SAMPLES];
+    private long frames = 0;
+    private long ticksAtLastFrame = 0, substepsAtLastFrame = 0;
+    private double ticksPerFrame = 0, substepsPerTick = 0;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private long lastSystemSample = 0, lastAllocatedBytes = -1;
+    private int threadCount = 0;
+    private double allocationRate = 0;
+
+    public PerformanceHud(Collection<Ball> balls) {
+        this.balls = balls;
+        if (this.balls == null) {
+            throw new RuntimeException("Balls collection cannot be null");
+        }
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    // call from the event dispatch thread
+    public void setVisible(boolean visible) {
+        if (visible && !this.visible) {
+            tickTimes.clear();
+            paintTimes.clear();
+            frames = 0;
+            ticksAtLastFrame = ticks.get();
+            substepsAtLastFrame = substeps.get();
+            lastAllocatedBytes = -1;
+        }
+        this.visible = visible;
+    }
+
+    // called from the game loop for every integrate(), callers skip the timing when the hud is hidden
+    public void recordTick(long nanos, int substeps) {
+        tickTimes.record(nanos);
+        ticks.incrementAndGet();
+        this.substeps.addAndGet(substeps);
+    }
+
+    // called at the end of paintComponent with the time the paint took
+    public void recordFrame(long paintNanos) {
+        paintTimes.record(paintNanos);
+        long now = System.nanoTime();
+        frameTimes[(int) (frames % FRAME_SAMPLES)] = now;
+        frames++;
+
+        long tickCount = ticks.get();
+        long substepCount = substeps.get();
+        ticksPerFrame = tickCount - ticksAtLastFrame;
+        substepsPerTick = tickCount == ticksAtLastFrame ? 0
+                : (substepCount - substepsAtLastFrame) / (double) (tickCount - ticksAtLastFrame);
+        ticksAtLastFrame = tickCount;
+        substepsAtLastFrame = substepCount;
+
+        // the MXBean calls are too expensive for every frame
+        if (now - lastSystemSample >= SYSTEM_SAMPLE_INTERVAL) {
+            threadCount = threads.getThreadCount();
+            long allocated = allocatedBytes();
+            if (lastAllocatedBytes >= 0 && lastSystemSample > 0) {
+                // threads that died since the last sample take their bytes with them, so the rate can dip
+                allocationRate = Math.max(0, allocated - lastAllocatedBytes) * 1e9 / (now - lastSystemSample);
+            }
+            lastAllocatedBytes = allocated;
+            lastSystemSample = now;
+        }
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        if (!visible) {
+            return;
+        }
+        int moving = 0, resting = 0;
+        for (Ball ball : balls) {
+            if (ball.getVelocity() > 0) {
+                moving++;
+            } else {
+                resting++;
+            }
+        }
+        long[] tick = tickTimes.percentiles(0.5, 0.99);
+        long[] paint = paintTimes.percentiles(0.5, 0.99);
+
+        String[] lines = new String[]{
+                String.format(Locale.ROOT, "render   %5.1f fps", fps()),
+                String.format(Locale.ROOT, "ticks    %5.1f /frame, %.1f substeps", ticksPerFrame, substepsPerTick),
+                String.format(Locale.ROOT, "tick     p50 %6.2f ms  p99 %6.2f ms", tick[0] / 1e6, tick[1] / 1e6),
+                String.format(Locale.ROOT, "paint    p50 %6.2f ms  p99 %6.2f ms", paint[0] / 1e6, paint[1] / 1e6),
+                String.format(Locale.ROOT, "balls    %d moving, %d resting", moving, resting),
+                String.format(Locale.ROOT, "threads  %d", threadCount),
+                String.format(Locale.ROOT, "alloc    %.1f MB/s", allocationRate / 1e6),
+        };
+
+        Graphics2D g2d = (Graphics2D) g;
+        Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+        g2d.setFont(font);
+        FontMetrics metrics = g2d.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        int lineHeight = metrics.getHeight();
+        g2d.setColor(new Color(0, 0, 0, 170));
+        g2d.fillRect(8, 8, width + 12, lines.length * lineHeight + 8);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], 14, 12 + metrics.getAscent() + i * lineHeight);
+        }
+    }
+
+    private double fps() {
+        int size = (int) Math.min(frames, FRAME_SAMPLES);
+        if (size < 2) {
+            return 0;
+        }
+        long newest = frameTimes[(int) ((frames - 1) % FRAME_SAMPLES)];
+        long oldest = frameTimes[(int) ((frames - size) % FRAME_SAMPLES)];
+        return newest == oldest ? 0 : (size - 1) * 1e9 / (newest - oldest);
+    }
+
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
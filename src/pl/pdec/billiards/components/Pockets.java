@@ -0,0 +1,82 @@
+package pl.pdec.billiards.components;
+
+public class Pockets {
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] radii;
+    private final double[] radiiSquared;
+    private final double innerMinX, innerMaxX, innerMinY, innerMaxY;
+
+    public Pockets(double x, double y, double width, double height, double cornerRadius, double sideRadius) {
+        if (cornerRadius <= 0) {
+            throw new RuntimeException("Corner pocket radius must be positive");
+        }
+        if (sideRadius < 0) {
+            throw new RuntimeException("Side pocket radius cannot be negative");
+        }
+        int count = sideRadius > 0 ? 6 : 4;
+        xs = new double[count];
+        ys = new double[count];
+        radii = new double[count];
+        radiiSquared = new double[count];
+
+        set(0, x, y, cornerRadius);
+        set(1, x + width, y, cornerRadius);
+        set(2, x + width, y + height, cornerRadius);
+        set(3, x, y + height, cornerRadius);
+        if (count == 6) {
+            // side pockets sit in the middle of the long cushions
+            if (height >= width) {
+                set(4, x, y + height / 2, sideRadius);
+                set(5, x + width, y + height / 2, sideRadius);
+            } else {
+                set(4, x + width / 2, y, sideRadius);
+                set(5, x + width / 2, y + height, sideRadius);
+            }
+        }
+
+        double maxRadius = Math.max(cornerRadius, sideRadius);
+        innerMinX = x + maxRadius;
+        innerMaxX = x + width - maxRadius;
+        innerMinY = y + maxRadius;
+        innerMaxY = y + height - maxRadius;
+    }
+
+    private void set(int index, double x, double y, double radius) {
+        xs[index] = x;
+        ys[index] = y;
+        radii[index] = radius;
+        radiiSquared[index] = radius * radius;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    public double getRadius(int index) {
+        return radii[index];
+    }
+
+    public int pocketAt(double x, double y) {
+        // every pocket lies on a cushion, so most of the cloth can be rejected with four comparisons
+        if (x > innerMinX && x < innerMaxX && y > innerMinY && y < innerMaxY) {
+            return -1;
+        }
+        for (int i = 0; i < xs.length; i++) {
+            double dx = x - xs[i];
+            double dy = y - ys[i];
+            if (dx * dx + dy * dy < radiiSquared[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
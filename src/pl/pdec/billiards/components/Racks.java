@@ -0,0 +1,199 @@
+package pl.pdec.billiards.components;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public final class Racks {
+    private static final int ROW_HEIGHT = (int) Math.ceil(Ball.DIMENSION * Math.sqrt(3) / 2) + 1;
+    private static final Color[] EIGHT_BALL_COLORS = new Color[]{
+            Color.YELLOW, Color.BLUE, Color.RED, new Color(128, 0, 128), Color.ORANGE, new Color(0, 100, 0),
+            new Color(128, 0, 0), Color.BLACK
+    };
+
+    private Racks() {
+    }
+
+    public static List<Ball> nineBall(Table table) {
+        return nineBall(table, Ball.DIMENSION);
+    }
+
+    public static List<Ball> nineBall(Table table, int dimension) {
+        List<Ball> balls = new ArrayList<>(10);
+        int leadBallX = (int) (table.getX() + table.getWidth() / 2);
+        int leadBallY = (int) (table.getY() + table.getHeight() / 4);
+        Ball leadBall = new Ball(1, false, Color.RED, leadBallX, leadBallY);
+        balls.add(leadBall);
+
+        balls.add(new Ball(2, false, Color.RED,
+                leadBallX - dimension / 2,
+                leadBallY - dimension));
+        balls.add(new Ball(3, false, Color.RED,
+                leadBallX + dimension / 2,
+                leadBallY - dimension));
+
+        Ball middleBall = new Ball(4, false, Color.RED,
+                leadBallX,
+                leadBallY - dimension * 2);
+        balls.add(middleBall);
+        balls.add(new Ball(5, false, Color.RED,
+                (int) (middleBall.getX() - dimension),
+                (int) middleBall.getY()));
+        balls.add(new Ball(6, false, Color.RED,
+                (int) (middleBall.getX() + dimension),
+                (int) middleBall.getY()));
+
+        balls.add(new Ball(7, false, Color.RED,
+                leadBallX - dimension / 2,
+                (int) (middleBall.getY() - dimension)));
+        balls.add(new Ball(8, false, Color.RED,
+                leadBallX + dimension / 2,
+                (int) (middleBall.getY() - dimension)));
+
+        balls.add(new Ball(9, false, Color.RED,
+                leadBallX,
+                (int) (middleBall.getY() - dimension * 2)));
+
+        balls.add(whiteBall(table));
+        return balls;
+    }
+
+    public static List<Ball> eightBall(Table table) {
+        List<Ball> balls = new ArrayList<>(16);
+        int leadBallX = (int) (table.getX() + table.getWidth() / 2);
+        int leadBallY = (int) (table.getY() + table.getHeight() / 4);
+        // the 8 goes to the middle of the third row, the rest alternate along the triangle
+        int[] order = new int[]{1, 9, 2, 10, 8, 3, 11, 4, 12, 5, 13, 6, 14, 7, 15};
+        int index = 0;
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column <= row; column++) {
+                int number = order[index++];
+                balls.add(new Ball(number, false, EIGHT_BALL_COLORS[(number - 1) % 8],
+                        leadBallX + (column * 2 - row) * (Ball.DIMENSION / 2 + 1),
+                        leadBallY - row * ROW_HEIGHT));
+            }
+        }
+
+        balls.add(whiteBall(table));
+        return balls;
+    }
+
+    public static List<Ball> snooker(Table table) {
+        List<Ball> balls = new ArrayList<>(22);
+        double x = table.getX();
+        double y = table.getY();
+        double width = table.getWidth();
+        double height = table.getHeight();
+        int centreX = (int) (x + width / 2);
+        int baulkY = (int) (y + height - height / 3);
+        int pinkY = (int) (y + height / 4);
+
+        int number = 1;
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column <= row; column++) {
+                balls.add(new Ball(number++, false, Color.RED,
+                        centreX + (column * 2 - row) * (Ball.DIMENSION / 2 + 1),
+                        pinkY - Ball.DIMENSION - 1 - row * ROW_HEIGHT));
+            }
+        }
+
+        balls.add(new Ball(16, false, Color.YELLOW, (int) (centreX + width / 6), baulkY));
+        balls.add(new Ball(17, false, new Color(0, 100, 0), (int) (centreX - width / 6), baulkY));
+        balls.add(new Ball(18, false, new Color(139, 69, 19), centreX, baulkY));
+        balls.add(new Ball(19, false, Color.BLUE, centreX, (int) (y + height / 2)));
+        balls.add(new Ball(20, false, Color.PINK, centreX, pinkY));
+        int backRowY = pinkY - Ball.DIMENSION - 1 - 4 * ROW_HEIGHT;
+        balls.add(new Ball(21, false, Color.BLACK, centreX,
+                (int) Math.min(y + height / 11, backRowY - ROW_HEIGHT)));
+
+        balls.add(new Ball(0, true, Color.WHITE, (int) (centreX + width / 12), (int) (baulkY + height / 12)));
+        return balls;
+    }
+
+    public static List<Ball> rack(Table table, String name) {
+        switch (name) {
+            case "9-ball":
+                return nineBall(table);
+            case "8-ball":
+                return eightBall(table);
+            case "snooker":
+                return snooker(table);
+            default:
+                throw new RuntimeException("Unknown rack " + name + ", expected 9-ball, 8-ball or snooker");
+        }
+    }
+
+    public static Ball white(Collection<Ball> balls) {
+        for (Ball ball : balls) {
+            if (ball.isWhite()) {
+                return ball;
+            }
+        }
+        throw new RuntimeException("White ball is not on the table");
+    }
+
+    // direction from the white to the lead ball, the number 1
+    public static double breakAngle(Collection<Ball> balls) {
+        Ball white = white(balls);
+        for (Ball ball : balls) {
+            if (!ball.isWhite() && ball.getNumber() == 1) {
+                return Math.atan2(ball.getY() - white.getY(), ball.getX() - white.getX());
+            }
+        }
+        throw new RuntimeException("Lead ball is not on the table");
+    }
+
+    // strikes the white at the lead ball, turned by the offset in degrees
+    public static void aimBreak(Collection<Ball> balls, double offsetDegrees, double velocity) {
+        double angle = breakAngle(balls) + Math.toRadians(offsetDegrees);
+        Ball white = white(balls);
+        white.setDirection(Math.cos(angle), Math.sin(angle));
+        white.setVelocity(velocity);
+    }
+
+    public static Table tableFor(int count) {
+        // keep the usual 3:4 proportions and leave roughly four cells of cloth per ball
+        double cell = Ball.DIMENSION * 1.5;
+        double side = Math.sqrt(count * 4.0) * cell;
+        double width = Math.max(450, side * 3 / 4 + 2 * Ball.DIMENSION);
+        double height = Math.max(600, side + 2 * Ball.DIMENSION);
+        return new Table(0, 0, width, height);
+    }
+
+    public static List<Ball> randomField(Table table, int count, long seed) {
+        double cell = Ball.DIMENSION * 1.5;
+        int columns = (int) ((table.getWidth() - Ball.DIMENSION * 2) / cell);
+        int rows = (int) ((table.getHeight() - Ball.DIMENSION * 2) / cell);
+        if ((long) columns * rows < count) {
+            throw new RuntimeException("Table is too small for " + count + " balls");
+        }
+
+        List<Integer> cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(i);
+        }
+        Random random = new Random(seed);
+        Collections.shuffle(cells, random);
+
+        List<Ball> balls = new ArrayList<>(count);
+        double jitter = (cell - Ball.DIMENSION) / 2;
+        for (int number = 0; number < count; number++) {
+            int c = cells.get(number);
+            double centreX = table.getX() + Ball.DIMENSION + (c % columns + 0.5) * cell;
+            double centreY = table.getY() + Ball.DIMENSION + (c / columns + 0.5) * cell;
+            balls.add(new Ball(number, number == 0, number == 0 ? Color.WHITE : Color.RED,
+                    (int) (centreX + (random.nextDouble() * 2 - 1) * jitter),
+                    (int) (centreY + (random.nextDouble() * 2 - 1) * jitter)));
+        }
+        return balls;
+    }
+
+    private static Ball whiteBall(Table table) {
+        return new Ball(0, true, Color.WHITE,
+                (int) (table.getX() + table.getWidth() / 2),
+                (int) (table.getY() + table.getHeight() - table.getHeight() / 4));
+    }
+}
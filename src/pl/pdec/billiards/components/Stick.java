@@ -45,11 +45,15 @@ public class Stick implements DrawableInterface {
         g2d.drawLine(linePoints[0], linePoints[1], linePoints[2], linePoints[3]);
     }
 
-    public double getStrikePower() {
+    synchronized public double getStrikePower() {
         return Math.sqrt(Math.pow(pointX - pointingX, 2) + Math.pow(pointY - pointingY, 2)) / 2;
     }
 
-    public double[] getStrikeDirection() {
+    synchronized public double getStrikeAngle() {
+        return Math.atan2(pointingY - pointY, pointingX - pointX);
+    }
+
+    synchronized public double[] getStrikeDirection() {
         double[] vector = new double[2];
         vector[0] = pointingX - pointX;
         vector[1] = pointingY - pointY;
@@ -1,23 +1,38 @@
 package pl.pdec.billiards.components;
 
 import pl.pdec.billiards.DrawableInterface;
-import pl.pdec.billiards.helpers.VectorCalc;
 
 import java.awt.*;
-import java.awt.geom.GeneralPath;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 
 public class Table implements DrawableInterface {
 
     private final double x, y;
     private final double width, height;
-    private final int holeDim = 20;
+    private final Pockets pockets;
+    private final Cushions cushions;
 
     public Table(double x, double y, double width, double height) {
+        this(x, y, width, height, 20, 20);
+    }
+
+    public Table(double x, double y, double width, double height, double cornerPocketRadius, double sidePocketRadius) {
+        this(x, y, width, height, cornerPocketRadius, sidePocketRadius, Cushions.rectangle(x, y, width, height));
+    }
+
+    public Table(double x, double y, double width, double height, double cornerPocketRadius, double sidePocketRadius,
+                 Cushions cushions) {
         this.x = x;
         this.y = y;
         this.width = width;
         this.height = height;
+        this.pockets = new Pockets(x, y, width, height, cornerPocketRadius, sidePocketRadius);
+        this.cushions = cushions;
+        if (this.cushions == null) {
+            throw new RuntimeException("Cushions object cannot be null");
+        }
     }
 
     public double getX() {
@@ -36,17 +51,16 @@ public class Table implements DrawableInterface {
         return height;
     }
 
+    public Pockets getPockets() {
+        return pockets;
+    }
+
+    public Cushions getCushions() {
+        return cushions;
+    }
+
     public boolean hitPocket(double posX, double posY) {
-        double[] ltPocket = new double[]{x, y};
-        double[] rtPocket = new double[]{x + width, y};
-        double[] rbPocket = new double[]{x + width, y + height};
-        double[] lbPocket = new double[]{x, y + height};
-        double[] toCheck = new double[]{posX, posY};
-
-        return VectorCalc.distanceBetweenPoints(ltPocket, toCheck) < holeDim
-                || VectorCalc.distanceBetweenPoints(rtPocket, toCheck) < holeDim
-                || VectorCalc.distanceBetweenPoints(rbPocket, toCheck) < holeDim
-                || VectorCalc.distanceBetweenPoints(lbPocket, toCheck) < holeDim;
+        return pockets.pocketAt(posX, posY) >= 0;
     }
 
     @Override
@@ -60,54 +74,20 @@ public class Table implements DrawableInterface {
         g2d.setColor(Color.BLACK);
         g2d.drawLine((int) x, (int) (y + height - height / 3), (int) (x + width), (int) (y + height - height / 3));
 
-        GeneralPath hole = new GeneralPath();
-        this.drawHoleLT(hole, holeDim, g2d);
-        this.drawHoleLB(hole, holeDim, g2d);
-        this.drawHoleRT(hole, holeDim, g2d);
-        this.drawHoleRB(hole, holeDim, g2d);
-    }
-
-    private void drawHoleLT(GeneralPath hole, int holeDim, Graphics2D g2d) {
-        hole.moveTo(x, y);
-        hole.lineTo(x + holeDim, y);
-        hole.curveTo(x + holeDim, y + holeDim / 2.,
-                x + holeDim / 2., y + holeDim,
-                x, y + holeDim);
-        hole.closePath();
-        g2d.setColor(Color.BLACK);
-        g2d.fill(hole);
-    }
-
-    private void drawHoleLB(GeneralPath hole, int holeDim, Graphics2D g2d) {
-        hole.moveTo(x, y + height);
-        hole.lineTo(x + holeDim, y + height);
-        hole.curveTo(x + holeDim, y + height - holeDim / 2.,
-                x + holeDim / 2., y + height - holeDim,
-                x, y + height - holeDim);
-        hole.closePath();
-        g2d.setColor(Color.BLACK);
-        g2d.fill(hole);
-    }
-
-    private void drawHoleRT(GeneralPath hole, int holeDim, Graphics2D g2d) {
-        hole.moveTo(x + width, y);
-        hole.lineTo(x + width - holeDim, y);
-        hole.curveTo(x + width - holeDim, y + holeDim / 2.,
-                x + width - holeDim / 2., y + holeDim,
-                x + width, y + holeDim);
-        hole.closePath();
-        g2d.setColor(Color.BLACK);
-        g2d.fill(hole);
-    }
+        g2d.setColor(Color.DARK_GRAY);
+        for (int i = 0; i < cushions.size(); i++) {
+            g2d.draw(new Line2D.Double(cushions.getSegment(i, 0), cushions.getSegment(i, 1),
+                    cushions.getSegment(i, 2), cushions.getSegment(i, 3)));
+        }
 
-    private void drawHoleRB(GeneralPath hole, int holeDim, Graphics2D g2d) {
-        hole.moveTo(x + width, y + height);
-        hole.lineTo(x + width - holeDim, y + height);
-        hole.curveTo(x + width - holeDim, y + height - holeDim / 2.,
-                x + width - holeDim / 2., y + height - holeDim,
-                x + width, y + height - holeDim);
-        hole.closePath();
         g2d.setColor(Color.BLACK);
-        g2d.fill(hole);
+        // pockets are drawn from the same model used for the hit test, clipped to the cloth
+        Shape clip = g2d.getClip();
+        g2d.clip(table);
+        for (int i = 0; i < pockets.size(); i++) {
+            double radius = pockets.getRadius(i);
+            g2d.fill(new Ellipse2D.Double(pockets.getX(i) - radius, pockets.getY(i) - radius, radius * 2, radius * 2));
+        }
+        g2d.setClip(clip);
     }
 }
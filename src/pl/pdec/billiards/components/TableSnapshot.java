@@ -0,0 +1,275 @@
+package pl.pdec.billiards.components;
+
+import java.awt.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class TableSnapshot {
+    public static final int MAGIC = 0x54534e50;
+    public static final int VERSION = 1;
+
+    // header: magic, version, ball count, segment count, then x, y, width, height, corner and side pocket radii
+    // and the cushion cell size
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int BALLS_OFFSET = 8;
+    private static final int SEGMENTS_OFFSET = 12;
+    private static final int GEOMETRY_OFFSET = 16;
+    private static final int GEOMETRY_VALUES = 7;
+    private static final int HEADER_SIZE = GEOMETRY_OFFSET + GEOMETRY_VALUES * 8;
+    private static final int SEGMENT_SIZE = 4 * 8;
+
+    // per ball: number, colour, flags, x, y, direction x, direction y, velocity
+    private static final int NUMBER = 0;
+    private static final int COLOR = 4;
+    private static final int FLAGS = 8;
+    private static final int X = 12;
+    private static final int Y = 20;
+    private static final int DIRECTION_X = 28;
+    private static final int DIRECTION_Y = 36;
+    private static final int VELOCITY = 44;
+    private static final int BALL_SIZE = 52;
+
+    private static final int IN_POCKET = 1;
+    private static final int WHITE = 2;
+
+    private final double[] scratch = new double[BallState.SIZE];
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+    private final int ballCapacity, segmentCapacity;
+
+    public TableSnapshot(int ballCapacity, int segmentCapacity) {
+        this.ballCapacity = ballCapacity;
+        this.segmentCapacity = segmentCapacity;
+        this.data = new byte[HEADER_SIZE + segmentCapacity * SEGMENT_SIZE + ballCapacity * BALL_SIZE];
+        this.buffer = ByteBuffer.wrap(data);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+    }
+
+    public static TableSnapshot of(Table table, Collection<Ball> balls) {
+        TableSnapshot snapshot = new TableSnapshot(balls.size(), table.getCushions().size());
+        snapshot.capture(table, balls);
+        return snapshot;
+    }
+
+    public int getBallCount() {
+        return buffer.getInt(BALLS_OFFSET);
+    }
+
+    public int getSegmentCount() {
+        return buffer.getInt(SEGMENTS_OFFSET);
+    }
+
+    // bytes in use, the serialized form is exactly this long
+    public int size() {
+        return HEADER_SIZE + getSegmentCount() * SEGMENT_SIZE + getBallCount() * BALL_SIZE;
+    }
+
+    public void capture(Table table, Collection<Ball> balls) {
+        Cushions cushions = table.getCushions();
+        if (balls.size() > ballCapacity || cushions.size() > segmentCapacity) {
+            throw new RuntimeException("Snapshot holds " + ballCapacity + " balls and " + segmentCapacity
+                    + " cushion segments, got " + balls.size() + " and " + cushions.size());
+        }
+        Pockets pockets = table.getPockets();
+        buffer.putInt(BALLS_OFFSET, balls.size());
+        buffer.putInt(SEGMENTS_OFFSET, cushions.size());
+        buffer.putDouble(GEOMETRY_OFFSET, table.getX());
+        buffer.putDouble(GEOMETRY_OFFSET + 8, table.getY());
+        buffer.putDouble(GEOMETRY_OFFSET + 16, table.getWidth());
+        buffer.putDouble(GEOMETRY_OFFSET + 24, table.getHeight());
+        buffer.putDouble(GEOMETRY_OFFSET + 32, pockets.getRadius(0));
+        buffer.putDouble(GEOMETRY_OFFSET + 40, pockets.size() > 4 ? pockets.getRadius(4) : 0);
+        buffer.putDouble(GEOMETRY_OFFSET + 48, cushions.getCellSize());
+        for (int i = 0; i < cushions.size(); i++) {
+            int offset = segmentOffset(i);
+            for (int c = 0; c < 4; c++) {
+                buffer.putDouble(offset + c * 8, cushions.getSegment(i, c));
+            }
+        }
+        captureBalls(balls);
+    }
+
+    // balls only, for undo and what-if forks on a table whose geometry was captured before
+    public void captureBalls(Collection<Ball> balls) {
+        if (balls.size() > ballCapacity) {
+            throw new RuntimeException("Snapshot holds " + ballCapacity + " balls, got " + balls.size());
+        }
+        buffer.putInt(BALLS_OFFSET, balls.size());
+        int i = 0;
+        for (Ball ball : balls) {
+            int offset = ballOffset(i++);
+            // one consistent read, the ball may still be moving on another thread
+            ball.getState().read(scratch);
+            buffer.putInt(offset + NUMBER, ball.getNumber());
+            buffer.putInt(offset + COLOR, ball.getColor() == null ? 0 : ball.getColor().getRGB());
+            buffer.putInt(offset + FLAGS, (scratch[BallState.IN_POCKET] != 0 ? IN_POCKET : 0)
+                    | (ball.isWhite() ? WHITE : 0));
+            buffer.putDouble(offset + X, scratch[BallState.X]);
+            buffer.putDouble(offset + Y, scratch[BallState.Y]);
+            buffer.putDouble(offset + DIRECTION_X, scratch[BallState.DIRECTION_X]);
+            buffer.putDouble(offset + DIRECTION_Y, scratch[BallState.DIRECTION_Y]);
+            buffer.putDouble(offset + VELOCITY, scratch[BallState.VELOCITY]);
+        }
+    }
+
+    // writes the captured state back into the same balls, in capture order; allocates nothing
+    public void restore(List<Ball> balls) {
+        int count = getBallCount();
+        if (balls.size() != count) {
+            throw new RuntimeException("Snapshot has " + count + " balls, got " + balls.size());
+        }
+        for (int i = 0; i < count; i++) {
+            Ball ball = balls.get(i);
+            int offset = ballOffset(i);
+            if (ball.getNumber() != buffer.getInt(offset + NUMBER)) {
+                throw new RuntimeException("Ball " + ball.getNumber() + " does not match snapshot ball "
+                        + buffer.getInt(offset + NUMBER));
+            }
+            ball.getState().set(buffer.getDouble(offset + X), buffer.getDouble(offset + Y),
+                    buffer.getDouble(offset + DIRECTION_X), buffer.getDouble(offset + DIRECTION_Y),
+                    buffer.getDouble(offset + VELOCITY), (buffer.getInt(offset + FLAGS) & IN_POCKET) != 0);
+        }
+    }
+
+    public boolean matches(Table table) {
+        Cushions cushions = table.getCushions();
+        Pockets pockets = table.getPockets();
+        if (cushions.size() != getSegmentCount()
+                || table.getX() != buffer.getDouble(GEOMETRY_OFFSET)
+                || table.getY() != buffer.getDouble(GEOMETRY_OFFSET + 8)
+                || table.getWidth() != buffer.getDouble(GEOMETRY_OFFSET + 16)
+                || table.getHeight() != buffer.getDouble(GEOMETRY_OFFSET + 24)
+                || pockets.getRadius(0) != buffer.getDouble(GEOMETRY_OFFSET + 32)
+                || (pockets.size() > 4 ? pockets.getRadius(4) : 0) != buffer.getDouble(GEOMETRY_OFFSET + 40)) {
+            return false;
+        }
+        for (int i = 0; i < cushions.size(); i++) {
+            for (int c = 0; c < 4; c++) {
+                if (cushions.getSegment(i, c) != buffer.getDouble(segmentOffset(i) + c * 8)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // per ball reads in capture order, for drawing a snapshot without restoring it into balls
+    public int getNumber(int index) {
+        return buffer.getInt(ballOffset(index) + NUMBER);
+    }
+
+    public int getRgb(int index) {
+        return buffer.getInt(ballOffset(index) + COLOR);
+    }
+
+    public double getX(int index) {
+        return buffer.getDouble(ballOffset(index) + X);
+    }
+
+    public double getY(int index) {
+        return buffer.getDouble(ballOffset(index) + Y);
+    }
+
+    public double getVelocity(int index) {
+        return buffer.getDouble(ballOffset(index) + VELOCITY);
+    }
+
+    public boolean isInPocket(int index) {
+        return (buffer.getInt(ballOffset(index) + FLAGS) & IN_POCKET) != 0;
+    }
+
+    public Table createTable() {
+        double[] segments = new double[getSegmentCount() * 4];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = buffer.getDouble(segmentOffset(0) + i * 8);
+        }
+        return new Table(buffer.getDouble(GEOMETRY_OFFSET), buffer.getDouble(GEOMETRY_OFFSET + 8),
+                buffer.getDouble(GEOMETRY_OFFSET + 16), buffer.getDouble(GEOMETRY_OFFSET + 24),
+                buffer.getDouble(GEOMETRY_OFFSET + 32), buffer.getDouble(GEOMETRY_OFFSET + 40),
+                new Cushions(segments, buffer.getDouble(GEOMETRY_OFFSET + 48)));
+    }
+
+    public List<Ball> createBalls() {
+        int count = getBallCount();
+        List<Ball> balls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = ballOffset(i);
+            balls.add(new Ball(buffer.getInt(offset + NUMBER), (buffer.getInt(offset + FLAGS) & WHITE) != 0,
+                    new Color(buffer.getInt(offset + COLOR), true), 0, 0));
+        }
+        restore(balls);
+        return balls;
+    }
+
+    // forks a position without allocating, the other snapshot must be at least as large
+    public void copyFrom(TableSnapshot other) {
+        if (other.getBallCount() > ballCapacity || other.getSegmentCount() > segmentCapacity) {
+            throw new RuntimeException("Snapshot is too small to copy " + other.getBallCount() + " balls and "
+                    + other.getSegmentCount() + " cushion segments");
+        }
+        System.arraycopy(other.data, 0, data, 0, HEADER_SIZE + other.getSegmentCount() * SEGMENT_SIZE);
+        System.arraycopy(other.data, other.ballOffset(0), data, ballOffset(0), other.getBallCount() * BALL_SIZE);
+    }
+
+    public void writeTo(ByteBuffer out) {
+        int segmentBytes = getSegmentCount() * SEGMENT_SIZE;
+        out.put(data, 0, HEADER_SIZE + segmentBytes);
+        out.put(data, ballOffset(0), getBallCount() * BALL_SIZE);
+    }
+
+    public void readFrom(ByteBuffer in) {
+        int start = in.position();
+        if (in.getInt(start + MAGIC_OFFSET) != MAGIC || in.getInt(start + VERSION_OFFSET) != VERSION) {
+            throw new RuntimeException("Not a table snapshot");
+        }
+        int balls = in.getInt(start + BALLS_OFFSET);
+        int segments = in.getInt(start + SEGMENTS_OFFSET);
+        if (balls < 0 || segments < 0 || balls > ballCapacity || segments > segmentCapacity) {
+            throw new RuntimeException("Snapshot holds " + ballCapacity + " balls and " + segmentCapacity
+                    + " cushion segments, got " + balls + " and " + segments);
+        }
+        in.get(data, 0, HEADER_SIZE + segments * SEGMENT_SIZE);
+        in.get(data, ballOffset(0), balls * BALL_SIZE);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        int segmentBytes = getSegmentCount() * SEGMENT_SIZE;
+        out.write(data, 0, HEADER_SIZE + segmentBytes);
+        out.write(data, ballOffset(0), getBallCount() * BALL_SIZE);
+    }
+
+    public void readFrom(DataInput in) throws IOException {
+        // the header is checked before it replaces ours, so a rejected stream leaves the snapshot as it was
+        in.readFully(header, 0, HEADER_SIZE);
+        if (headerBuffer.getInt(MAGIC_OFFSET) != MAGIC || headerBuffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new RuntimeException("Not a table snapshot");
+        }
+        int balls = headerBuffer.getInt(BALLS_OFFSET);
+        int segments = headerBuffer.getInt(SEGMENTS_OFFSET);
+        if (balls < 0 || segments < 0 || balls > ballCapacity || segments > segmentCapacity) {
+            throw new RuntimeException("Snapshot holds " + ballCapacity + " balls and " + segmentCapacity
+                    + " cushion segments, got " + balls + " and " + segments);
+        }
+        System.arraycopy(header, 0, data, 0, HEADER_SIZE);
+        in.readFully(data, HEADER_SIZE, segments * SEGMENT_SIZE);
+        in.readFully(data, ballOffset(0), balls * BALL_SIZE);
+    }
+
+    // the ball block starts after the full segment capacity, so balls can be recaptured without moving it
+    private int ballOffset(int index) {
+        return HEADER_SIZE + segmentCapacity * SEGMENT_SIZE + index * BALL_SIZE;
+    }
+
+    private int segmentOffset(int index) {
+        return HEADER_SIZE + index * SEGMENT_SIZE;
+    }
+}
@@ -0,0 +1,46 @@
+package pl.pdec.billiards.helpers;
+
+import java.util.Arrays;
+
+public class LatencyRecorder {
+    private final long[] samples;
+    private final long[] sorted;
+    private long count = 0;
+
+    public LatencyRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new RuntimeException("Capacity must be positive");
+        }
+        this.samples = new long[capacity];
+        this.sorted = new long[capacity];
+    }
+
+    synchronized public void record(long nanos) {
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+    }
+
+    synchronized public long getCount() {
+        return count;
+    }
+
+    synchronized public void clear() {
+        count = 0;
+    }
+
+    // percentiles are taken over the most recent samples that still fit in the ring
+    synchronized public long[] percentiles(double... quantiles) {
+        int size = (int) Math.min(count, samples.length);
+        long[] result = new long[quantiles.length];
+        if (size == 0) {
+            return result;
+        }
+        System.arraycopy(samples, 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        for (int i = 0; i < quantiles.length; i++) {
+            int index = (int) Math.ceil(quantiles[i] * size) - 1;
+            result[i] = sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+
+import java.util.Collection;
+
+public class AdaptiveSubstepper {
+    private final double maxDisplacement;
+    private final int maxSubsteps;
+
+    public AdaptiveSubstepper() {
+        this(PhysicsParams.DEFAULT);
+    }
+
+    // a quarter of the params' ball dimension per substep, at most 64 substeps
+    public AdaptiveSubstepper(PhysicsParams params) {
+        this(0.25, 64, params.getBallDimension());
+    }
+
+    public AdaptiveSubstepper(double maxDisplacementFraction, int maxSubsteps) {
+        this(maxDisplacementFraction, maxSubsteps, PhysicsParams.DEFAULT.getBallDimension());
+    }
+
+    public AdaptiveSubstepper(double maxDisplacementFraction, int maxSubsteps, int ballDimension) {
+        if (maxDisplacementFraction <= 0) {
+            throw new RuntimeException("Displacement fraction must be positive");
+        }
+        if (maxSubsteps < 1) {
+            throw new RuntimeException("At least one substep is required");
+        }
+        this.maxDisplacement = ballDimension * maxDisplacementFraction;
+        this.maxSubsteps = maxSubsteps;
+    }
+
+    public int substeps(Collection<Ball> balls, double deltaTime) {
+        double maxVelocity = 0;
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                maxVelocity = Math.max(maxVelocity, ball.getVelocity());
+            }
+        }
+
+        // no ball may travel further than a fraction of its diameter in a single substep
+        int substeps = (int) Math.ceil(maxVelocity * deltaTime / maxDisplacement);
+        return Math.max(1, Math.min(maxSubsteps, substeps));
+    }
+}
@@ -0,0 +1,181 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ContactSolver {
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    private final double restitution;
+    private final int iterations;
+    private final int dimension;
+    private final List<Contact> pending = new ArrayList<>();
+    private final List<List<Contact>> batches = new ArrayList<>();
+    private final Set<Long> seen = new HashSet<>();
+    private final Map<Ball, Long> usedColors = new HashMap<>();
+    // both balls of a contact are read once, consistently, by whichever thread resolves it
+    private final ThreadLocal<double[][]> states = ThreadLocal.withInitial(() -> new double[2][BallState.SIZE]);
+    private int lastContactCount = 0;
+
+    public ContactSolver() {
+        this(PhysicsParams.DEFAULT);
+    }
+
+    public ContactSolver(PhysicsParams params) {
+        this(params.getRestitution(), 4, params.getBallDimension());
+    }
+
+    public ContactSolver(double restitution, int iterations, int dimension) {
+        if (restitution < 0 || restitution > 1) {
+            throw new RuntimeException("Restitution must be between 0 and 1");
+        }
+        if (iterations < 1) {
+            throw new RuntimeException("At least one solver iteration is required");
+        }
+        this.restitution = restitution;
+        this.iterations = iterations;
+        this.dimension = dimension;
+    }
+
+    synchronized public void addContact(Ball ball, Ball otherBall) {
+        Ball first = ball.getNumber() < otherBall.getNumber() ? ball : otherBall;
+        Ball second = first == ball ? otherBall : ball;
+        if (seen.add(((long) first.getNumber() << 32) | (second.getNumber() & 0xffffffffL))) {
+            pending.add(new Contact(first, second));
+        }
+    }
+
+    public int getLastContactCount() {
+        return lastContactCount;
+    }
+
+    synchronized public void solve(EventStream events, double t) {
+        lastContactCount = pending.size();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        colorContacts();
+        for (int i = 0; i < iterations; i++) {
+            for (List<Contact> batch : batches) {
+                // contacts in one batch share no ball, so they can be resolved concurrently
+                if (batch.size() >= PARALLEL_THRESHOLD) {
+                    batch.parallelStream().forEach(this::resolve);
+                } else {
+                    for (Contact contact : batch) {
+                        resolve(contact);
+                    }
+                }
+            }
+        }
+
+        if (events != null) {
+            for (Contact contact : pending) {
+                if (contact.hit) {
+                    events.publish(EventStream.BALL_HIT, contact.first.getNumber(), contact.second.getNumber(),
+                            (contact.first.getX() + contact.second.getX()) / 2,
+                            (contact.first.getY() + contact.second.getY()) / 2, t);
+                }
+            }
+        }
+
+        pending.clear();
+        seen.clear();
+        usedColors.clear();
+        for (List<Contact> batch : batches) {
+            batch.clear();
+        }
+    }
+
+    private void colorContacts() {
+        for (Contact contact : pending) {
+            long used = usedColors.getOrDefault(contact.first, 0L) | usedColors.getOrDefault(contact.second, 0L);
+            int color = Long.numberOfTrailingZeros(~used);
+            if (color == 64) {
+                // more than 64 contacts on one ball, fall back to an extra batch per contact
+                color = 64 + batches.size();
+            } else {
+                usedColors.merge(contact.first, 1L << color, (a, b) -> a | b);
+                usedColors.merge(contact.second, 1L << color, (a, b) -> a | b);
+            }
+            while (batches.size() <= color) {
+                batches.add(new ArrayList<>());
+            }
+            batches.get(color).add(contact);
+        }
+    }
+
+    private void resolve(Contact contact) {
+        Ball a = contact.first;
+        Ball b = contact.second;
+        double[][] state = states.get();
+        a.getState().read(state[0]);
+        b.getState().read(state[1]);
+        double ax = state[0][BallState.X], ay = state[0][BallState.Y];
+        double bx = state[1][BallState.X], by = state[1][BallState.Y];
+        double nx = bx - ax;
+        double ny = by - ay;
+        double distance = Math.sqrt(nx * nx + ny * ny);
+        if (distance == 0) {
+            return;
+        }
+        nx /= distance;
+        ny /= distance;
+
+        double avx = state[0][BallState.DIRECTION_X] * state[0][BallState.VELOCITY];
+        double avy = state[0][BallState.DIRECTION_Y] * state[0][BallState.VELOCITY];
+        double bvx = state[1][BallState.DIRECTION_X] * state[1][BallState.VELOCITY];
+        double bvy = state[1][BallState.DIRECTION_Y] * state[1][BallState.VELOCITY];
+
+        double approach = (avx - bvx) * nx + (avy - bvy) * ny;
+        if (approach > 0) {
+            // equal masses: the normal impulse is split evenly, so momentum is conserved
+            double impulse = (1 + restitution) / 2 * approach;
+            contact.hit = true;
+            setVelocity(a, avx - impulse * nx, avy - impulse * ny);
+            setVelocity(b, bvx + impulse * nx, bvy + impulse * ny);
+        }
+
+        double overlap = dimension - distance;
+        if (overlap > 0) {
+            a.setPosition(ax - nx * overlap / 2, ay - ny * overlap / 2);
+            b.setPosition(bx + nx * overlap / 2, by + ny * overlap / 2);
+        }
+    }
+
+    private static void setVelocity(Ball ball, double vx, double vy) {
+        double speed = Math.sqrt(vx * vx + vy * vy);
+        if (speed > 0) {
+            ball.setDirection(vx / speed, vy / speed);
+        }
+        ball.setVelocity(speed);
+    }
+
+    // other is a BallState.read copy of the ball the caller does not own
+    static boolean isApproaching(Ball ball, double[] other) {
+        double nx = other[BallState.X] - ball.getX();
+        double ny = other[BallState.Y] - ball.getY();
+        double relativeX = ball.getDirectionX() * ball.getVelocity()
+                - other[BallState.DIRECTION_X] * other[BallState.VELOCITY];
+        double relativeY = ball.getDirectionY() * ball.getVelocity()
+                - other[BallState.DIRECTION_Y] * other[BallState.VELOCITY];
+        return relativeX * nx + relativeY * ny > 0;
+    }
+
+    private static final class Contact {
+        private final Ball first, second;
+        private boolean hit = false;
+
+        private Contact(Ball first, Ball second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+}
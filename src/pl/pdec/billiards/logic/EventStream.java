@@ -0,0 +1,153 @@
+package pl.pdec.billiards.logic;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class EventStream {
+    public static final int BALL_HIT = 1;
+    public static final int CUSHION_HIT = 2;
+    public static final int POCKET = 3;
+
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] types;
+    private final int[] balls;
+    private final int[] otherBalls;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] times;
+    private volatile long cursor = 0;
+
+    public EventStream(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new RuntimeException("Capacity must be a power of two");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.types = new int[capacity];
+        this.balls = new int[capacity];
+        this.otherBalls = new int[capacity];
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.times = new double[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, WRITING);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getPublished() {
+        return cursor;
+    }
+
+    // must only be called from one thread at a time, it never waits for consumers
+    public void publish(int type, int ball, int otherBall, double x, double y, double t) {
+        long sequence = cursor;
+        int slot = (int) (sequence & mask);
+
+        sequences.set(slot, WRITING);
+        VarHandle.releaseFence();
+        types[slot] = type;
+        balls[slot] = ball;
+        otherBalls[slot] = otherBall;
+        xs[slot] = x;
+        ys[slot] = y;
+        times[slot] = t;
+        sequences.setRelease(slot, sequence);
+
+        cursor = sequence + 1;
+    }
+
+    public Consumer newConsumer() {
+        return new Consumer(cursor);
+    }
+
+    public static final class Event {
+        private long sequence;
+        private int type;
+        private int ball, otherBall;
+        private double x, y, t;
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getBall() {
+            return ball;
+        }
+
+        public int getOtherBall() {
+            return otherBall;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getT() {
+            return t;
+        }
+    }
+
+    public final class Consumer {
+        private long next;
+        private long dropped = 0;
+
+        private Consumer(long next) {
+            this.next = next;
+        }
+
+        public boolean poll(Event event) {
+            long head = cursor;
+            if (head - next > capacity) {
+                // the producer lapped us, skip what has already been overwritten
+                dropped += head - next - capacity;
+                next = head - capacity;
+            }
+
+            while (next < head) {
+                int slot = (int) (next & mask);
+                if (sequences.getAcquire(slot) == next) {
+                    event.sequence = next;
+                    event.type = types[slot];
+                    event.ball = balls[slot];
+                    event.otherBall = otherBalls[slot];
+                    event.x = xs[slot];
+                    event.y = ys[slot];
+                    event.t = times[slot];
+                    VarHandle.acquireFence();
+                    if (sequences.get(slot) == next) {
+                        next++;
+                        return true;
+                    }
+                }
+                dropped++;
+                next++;
+            }
+            return false;
+        }
+
+        public long getLag() {
+            return Math.max(0, cursor - next);
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package pl.pdec.billiards.logic;
 
 import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallState;
 import pl.pdec.billiards.components.Table;
 import pl.pdec.billiards.helpers.VectorCalc;
 
@@ -10,59 +11,146 @@ import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
-public class GameMechanic implements Runnable {
+public class GameMechanic implements PhysicsEngine, Runnable {
     private final Table table;
     private final Collection<Ball> balls;
     private final CyclicBarrier barrier;
     private final Set<Worker> workers = new HashSet<>();
+    private final PhysicsParams params;
+    private final ContactSolver contactSolver;
+    private volatile EventStream events = null;
     private volatile double t = 0, deltaTime = 0;
+    private long requestedTicks = 0, dispatchedTicks = 0, completedTicks = 0;
+    private boolean shutdown = false;
+    private final boolean threaded;
 
     public GameMechanic(Table table, Collection<Ball> balls) {
+        this(table, balls, true);
+    }
+
+    public GameMechanic(Table table, Collection<Ball> balls, boolean startThreads) {
+        this(table, balls, startThreads, PhysicsParams.DEFAULT);
+    }
+
+    public GameMechanic(Table table, Collection<Ball> balls, boolean startThreads, PhysicsParams params) {
         this.table = table;
         this.balls = balls;
+        this.params = params;
+        this.threaded = startThreads;
         if (this.table == null) {
             throw new RuntimeException("Table object cannot be null");
         }
         if (this.balls == null) {
             throw new RuntimeException("Balls collection cannot be null");
         }
+        if (this.params == null) {
+            throw new RuntimeException("Physics params cannot be null");
+        }
+        contactSolver = new ContactSolver(params);
 
         barrier = new CyclicBarrier(balls.size(), this);
         for (Ball ball : balls) {
             Worker w = new Worker(ball);
             workers.add(w);
-            new Thread(w).start();
+            if (startThreads) {
+                new Thread(w).start();
+            }
         }
     }
 
+    @Override
     public void shutdown() {
         for (Worker worker : workers) {
             worker.shutdown();
         }
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
     }
 
+    @Override
     public void integrate(double t, double deltaTime) {
+        if (!threaded) {
+            step(t, deltaTime);
+            return;
+        }
         synchronized (this) {
             this.t = t;
             this.deltaTime = deltaTime;
-            notify();
+            requestedTicks++;
+            notifyAll();
+            // block until every worker has moved its ball, so consecutive substeps are not lost
+            while (completedTicks < requestedTicks && !shutdown) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public void step(double t, double deltaTime) {
+        for (Worker worker : workers) {
+            if (!worker.ball.isInPocket()) {
+                worker.moveBall(t, deltaTime);
+            }
+        }
+        endTick(t);
+    }
+
+    @Override
+    public void setEventStream(EventStream events) {
+        this.events = events;
+    }
+
+    private void endTick(double t) {
+        contactSolver.solve(events, t);
+        EventStream events = this.events;
+        for (Worker worker : workers) {
+            if (worker.cushionHit && events != null) {
+                events.publish(EventStream.CUSHION_HIT, worker.ball.getNumber(), -1,
+                        worker.cushionX, worker.cushionY, t);
+            }
+            if (worker.pocketed && events != null) {
+                events.publish(EventStream.POCKET, worker.ball.getNumber(), worker.pocketIndex,
+                        worker.ball.getX(), worker.ball.getY(), t);
+            }
+            worker.cushionHit = false;
+            worker.pocketed = false;
         }
     }
 
     @Override
     public void run() {
+        // barrier action: every worker has finished moving its ball for the current tick
+        endTick(t);
         synchronized (this) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            completedTicks = dispatchedTicks;
+            notifyAll();
+            while (dispatchedTicks == requestedTicks && !shutdown) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
+            dispatchedTicks = requestedTicks;
         }
     }
 
     private class Worker implements Runnable {
         private final Ball ball;
         private volatile boolean shutdown = false;
+        private boolean cushionHit = false, pocketed = false;
+        private double cushionX, cushionY;
+        private final double[] cushionHitInfo = new double[5];
+        // other balls are moved by their own workers meanwhile, so each one is read once, consistently, into here
+        private final double[] other = new double[BallState.SIZE];
+        private int pocketIndex = -1;
 
         private Worker(Ball ball) {
             this.ball = ball;
@@ -91,8 +179,6 @@ public class GameMechanic implements Runnable {
         @Override
         public void run() {
             while (!shutdown) {
-                moveBall(t, deltaTime);
-
                 try {
                     barrier.await();
                 } catch (InterruptedException e) {
@@ -101,6 +187,11 @@ public class GameMechanic implements Runnable {
                 } catch (BrokenBarrierException e) {
                     return;
                 }
+
+                // a pocketed ball stays where it dropped, as in step()
+                if (!shutdown && !ball.isInPocket()) {
+                    moveBall(t, deltaTime);
+                }
             }
         }
 
@@ -108,23 +199,28 @@ public class GameMechanic implements Runnable {
             if (ball.getVelocity() <= 0.01) {
                 return;
             }
-            double[] directionVector = ball.getDirection();
-            double newX = ball.getX() + directionVector[0] * ball.getVelocity() * deltaTime;
-            double newY = ball.getY() + directionVector[1] * ball.getVelocity() * deltaTime;
+            double newX = ball.getX() + ball.getDirectionX() * ball.getVelocity() * deltaTime;
+            double newY = ball.getY() + ball.getDirectionY() * ball.getVelocity() * deltaTime;
             double distanceToTravel = VectorCalc.distanceBetweenPoints(new double[]{newX, newY},
                     new double[]{ball.getX(), ball.getY()});
 
-            if (!hitOtherBall(findBallToHit(newX, newY, distanceToTravel), newX, newY)) {
-                double[] newPosition = hitTableBorder(newX, newY, distanceToTravel, 0);
+            if (!hitOtherBall(findBallToHit(newX, newY, distanceToTravel))) {
+                double[] newPosition = hitTableBorder(newX, newY);
                 ball.setPosition(newPosition[0], newPosition[1]);
             }
 
-            if (table.hitPocket(ball.getX(), ball.getY())) {
+            int pocket = table.getPockets().pocketAt(ball.getX(), ball.getY());
+            if (pocket >= 0 && !ball.isInPocket()) {
+                // the ball drops, it neither rolls on nor reports the pocket again on the next tick
                 ball.setIsInPocket();
+                ball.setVelocity(0);
+                pocketed = true;
+                pocketIndex = pocket;
+                return;
             }
 
-            double newVelocity = ball.getVelocity() - ball.getVelocity() * 0.9 * deltaTime;
-            if (newVelocity <= 1) {
+            double newVelocity = ball.getVelocity() - ball.getVelocity() * params.getFriction() * deltaTime;
+            if (newVelocity <= params.getStopVelocity()) {
                 ball.setVelocity(0);
             } else {
                 ball.setVelocity(newVelocity);
@@ -135,9 +231,9 @@ public class GameMechanic implements Runnable {
             // ball path line equation:
             // Ax + By + C = 0
             // y = m*x + q   =>  y = -A/Bx - C/B   =>   m = -A/B, q = -C/B
-            double a = ball.getDirection()[1];
-            double b = -ball.getDirection()[0];
-            double c = ball.getY() * ball.getDirection()[0] - ball.getX() * ball.getDirection()[1];
+            double a = ball.getDirectionY();
+            double b = -ball.getDirectionX();
+            double c = ball.getY() * ball.getDirectionX() - ball.getX() * ball.getDirectionY();
             // distance from line to point:
             // distance(ax + by + c, (x0, y0)) = |ax0 + by0 + c| / sqrt(a^2 + b^2)
             double x0, y0;
@@ -148,22 +244,23 @@ public class GameMechanic implements Runnable {
 
             for (Ball otherBall : balls) {
                 if (!ball.equals(otherBall)) {
+                    otherBall.getState().read(other);
+                    x0 = other[BallState.X];
+                    y0 = other[BallState.Y];
                     distanceBetweenBalls = VectorCalc.distanceBetweenPoints(new double[]{newX, newY},
-                            new double[]{otherBall.getX(), otherBall.getY()});
-                    if (distanceBetweenBalls <= Ball.DIMENSION) {
+                            new double[]{x0, y0});
+                    if (distanceBetweenBalls <= params.getBallDimension()) {
                         return otherBall;
                     } else {
-                        double[] otherBallPosition = new double[]{otherBall.getX(), otherBall.getY()};
-                        x0 = otherBall.getX();
-                        y0 = otherBall.getY();
+                        double[] otherBallPosition = new double[]{x0, y0};
                         distance = Math.abs(a * x0 + b * y0 + c) / Math.sqrt(a * a + b * b);
-                        if (distance < Ball.DIMENSION / 2.) {
+                        if (distance < params.getBallDimension() / 2.) {
                             for (distanceTmp = 0; distanceTmp < distanceToTravel; distanceTmp += 0.1) {
-                                x1 = ball.getX() * distanceTmp * ball.getDirection()[0];
-                                y1 = ball.getY() * distanceTmp * ball.getDirection()[1];
+                                x1 = ball.getX() * distanceTmp * ball.getDirectionX();
+                                y1 = ball.getY() * distanceTmp * ball.getDirectionY();
                                 distanceBetweenBalls = VectorCalc.distanceBetweenPoints(new double[]{x1, y1},
                                         otherBallPosition);
-                                if (distanceBetweenBalls <= Ball.DIMENSION) {
+                                if (distanceBetweenBalls <= params.getBallDimension()) {
                                     return otherBall;
                                 }
                             }
@@ -175,94 +272,51 @@ public class GameMechanic implements Runnable {
             return null;
         }
 
-        private boolean hitOtherBall(Ball ballToHit, double newX, double newY) {
-            if (ballToHit != null) {
-                double[] hitVector = new double[2];
-                hitVector[0] = ball.getX() - ballToHit.getX();
-                hitVector[1] = ball.getY() - ballToHit.getY();
-                hitVector = VectorCalc.normalizeVector(hitVector);
-
-                double[] reflectionVector = VectorCalc.reflectVector(ball.getDirection(), hitVector);
-                reflectionVector = VectorCalc.normalizeVector(reflectionVector);
-                ball.setDirection(reflectionVector);
-
-                hitVector[0] = ballToHit.getX() - ball.getX();
-                hitVector[1] = ballToHit.getY() - ball.getY();
-                hitVector = VectorCalc.normalizeVector(hitVector);
-                ballToHit.setDirection(hitVector);
-                ballToHit.setVelocity(ball.getVelocity());
+        private boolean hitOtherBall(Ball ballToHit) {
+            if (ballToHit == null) {
+                return false;
+            }
+            ballToHit.getState().read(other);
+            if (ContactSolver.isApproaching(ball, other)) {
+                contactSolver.addContact(ball, ballToHit);
                 return true;
             }
 
             return false;
         }
 
-        private double[] hitTableBorder(double newX, double newY, double distanceToTravel, int loop) {
-            if (loop > 10) {
-                return new double[]{newX, newY};
+        private double[] hitTableBorder(double newX, double newY) {
+            double fromX = ball.getX();
+            double fromY = ball.getY();
+            double directionX = ball.getDirectionX();
+            double directionY = ball.getDirectionY();
+            boolean reflected = false;
+            for (int loop = 0; loop <= 10 && table.getCushions().firstHit(fromX, fromY, newX, newY, cushionHitInfo); loop++) {
+                reflected = true;
+                cushionHit = true;
+                cushionX = cushionHitInfo[1];
+                cushionY = cushionHitInfo[2];
+                double normalX = cushionHitInfo[3];
+                double normalY = cushionHitInfo[4];
+
+                // mirror the rest of the path and the direction around the cushion
+                double remainingX = newX - cushionX;
+                double remainingY = newY - cushionY;
+                double remainingDot = remainingX * normalX + remainingY * normalY;
+                newX = cushionX + remainingX - 2 * remainingDot * normalX;
+                newY = cushionY + remainingY - 2 * remainingDot * normalY;
+
+                double directionDot = directionX * normalX + directionY * normalY;
+                directionX -= 2 * directionDot * normalX;
+                directionY -= 2 * directionDot * normalY;
+
+                fromX = cushionX;
+                fromY = cushionY;
             }
-            /*  y1 = a*x1 + b
-                y2 = a*x2 + b
-
-                b = y1 - a*x1
-                y2 = a*x2 + (y1 - a*x1)
-                a = (y2 - y1) / (x2 - x1)
-             */
-            boolean doReflection = false;
-            double aDirectionLine = (newY - ball.getY()) / (newX - ball.getX());
-            double bDirectionLine = ball.getY() - aDirectionLine * ball.getX();
-            double[] intersectionPoint = new double[2];
-            double[] hitVector = new double[2];
-            if (newX < table.getX()) {
-                doReflection = true;
-
-                intersectionPoint[0] = table.getX();
-                intersectionPoint[1] = aDirectionLine * table.getX() + bDirectionLine;
-
-                hitVector[0] = 1;
-                hitVector[1] = 0;
-            } else if (newX > table.getX() + table.getWidth()) {
-                doReflection = true;
-
-                double ballX = table.getX() + table.getWidth();
-                intersectionPoint[0] = ballX;
-                intersectionPoint[1] = aDirectionLine * ballX + bDirectionLine;
-
-                hitVector[0] = -1;
-                hitVector[1] = 0;
-            } else if (newY < table.getY()) {
-                doReflection = true;
-
-                intersectionPoint[0] = (table.getY() - bDirectionLine) / aDirectionLine;
-                intersectionPoint[1] = table.getY();
-
-                hitVector[0] = 0;
-                hitVector[1] = 1;
-            } else if (newY > table.getY() + table.getHeight()) {
-                doReflection = true;
-
-                intersectionPoint[0] = (table.getY() + table.getHeight() - bDirectionLine) / aDirectionLine;
-                intersectionPoint[1] = table.getY() + table.getHeight();
-
-                hitVector[0] = 0;
-                hitVector[1] = -1;
-            }
-
-            if (doReflection) {
-                double distanceToBorder = VectorCalc.distanceBetweenPoints(intersectionPoint,
-                        new double[]{ball.getX(), ball.getY()});
-                double distanceAfterHitBorder = distanceToTravel - distanceToBorder;
-
-                double[] reflectionVector = VectorCalc.reflectVector(ball.getDirection(), hitVector);
-                reflectionVector = VectorCalc.normalizeVector(reflectionVector);
 
-                newX = intersectionPoint[0] + distanceAfterHitBorder * reflectionVector[0];
-                newY = intersectionPoint[1] + distanceAfterHitBorder * reflectionVector[1];
-
-                ball.setDirection(reflectionVector);
-                return hitTableBorder(newX, newY, distanceAfterHitBorder, loop + 1);
+            if (reflected) {
+                ball.setDirection(directionX, directionY);
             }
-
             return new double[]{newX, newY};
         }
     }
@@ -1,6 +1,7 @@
 package pl.pdec.billiards.logic;
 
 import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallState;
 import pl.pdec.billiards.components.Table;
 import pl.pdec.billiards.helpers.VectorCalc;
 
@@ -10,59 +11,146 @@ import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
-public class GameMechanicMath implements Runnable {
+public class GameMechanicMath implements PhysicsEngine, Runnable {
     private final Table table;
     private final Collection<Ball> balls;
     private final CyclicBarrier barrier;
     private final Set<Worker> workers = new HashSet<>();
+    private final PhysicsParams params;
+    private final ContactSolver contactSolver;
+    private volatile EventStream events = null;
     private volatile double t = 0, deltaTime = 0;
+    private long requestedTicks = 0, dispatchedTicks = 0, completedTicks = 0;
+    private boolean shutdown = false;
+    private final boolean threaded;
 
     public GameMechanicMath(Table table, Collection<Ball> balls) {
+        this(table, balls, true);
+    }
+
+    public GameMechanicMath(Table table, Collection<Ball> balls, boolean startThreads) {
+        this(table, balls, startThreads, PhysicsParams.DEFAULT);
+    }
+
+    public GameMechanicMath(Table table, Collection<Ball> balls, boolean startThreads, PhysicsParams params) {
         this.table = table;
         this.balls = balls;
+        this.params = params;
+        this.threaded = startThreads;
         if (this.table == null) {
             throw new RuntimeException("Table object cannot be null");
         }
         if (this.balls == null) {
             throw new RuntimeException("Balls collection cannot be null");
         }
+        if (this.params == null) {
+            throw new RuntimeException("Physics params cannot be null");
+        }
+        contactSolver = new ContactSolver(params);
 
         barrier = new CyclicBarrier(balls.size(), this);
         for (Ball ball : balls) {
             Worker w = new Worker(ball);
             workers.add(w);
-            new Thread(w).start();
+            if (startThreads) {
+                new Thread(w).start();
+            }
         }
     }
 
+    @Override
     public void shutdown() {
         for (Worker worker : workers) {
             worker.shutdown();
         }
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
     }
 
+    @Override
     public void integrate(double t, double deltaTime) {
+        if (!threaded) {
+            step(t, deltaTime);
+            return;
+        }
         synchronized (this) {
             this.t = t;
             this.deltaTime = deltaTime;
-            notify();
+            requestedTicks++;
+            notifyAll();
+            // block until every worker has moved its ball, so consecutive substeps are not lost
+            while (completedTicks < requestedTicks && !shutdown) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public void step(double t, double deltaTime) {
+        for (Worker worker : workers) {
+            if (!worker.ball.isInPocket()) {
+                worker.moveBall(t, deltaTime);
+            }
+        }
+        endTick(t);
+    }
+
+    @Override
+    public void setEventStream(EventStream events) {
+        this.events = events;
+    }
+
+    private void endTick(double t) {
+        contactSolver.solve(events, t);
+        EventStream events = this.events;
+        for (Worker worker : workers) {
+            if (worker.cushionHit && events != null) {
+                events.publish(EventStream.CUSHION_HIT, worker.ball.getNumber(), -1,
+                        worker.cushionX, worker.cushionY, t);
+            }
+            if (worker.pocketed && events != null) {
+                events.publish(EventStream.POCKET, worker.ball.getNumber(), worker.pocketIndex,
+                        worker.ball.getX(), worker.ball.getY(), t);
+            }
+            worker.cushionHit = false;
+            worker.pocketed = false;
         }
     }
 
     @Override
     public void run() {
+        // barrier action: every worker has finished moving its ball for the current tick
+        endTick(t);
         synchronized (this) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            completedTicks = dispatchedTicks;
+            notifyAll();
+            while (dispatchedTicks == requestedTicks && !shutdown) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
+            dispatchedTicks = requestedTicks;
         }
     }
 
     private class Worker implements Runnable {
         private final Ball ball;
         private volatile boolean shutdown = false;
+        private boolean cushionHit = false, pocketed = false;
+        private double cushionX, cushionY;
+        private final double[] cushionHitInfo = new double[5];
+        // other balls are moved by their own workers meanwhile, so each one is read once, consistently, into here
+        private final double[] other = new double[BallState.SIZE];
+        private int pocketIndex = -1;
 
         private Worker(Ball ball) {
             this.ball = ball;
@@ -91,8 +179,6 @@ public class GameMechanicMath implements Runnable {
         @Override
         public void run() {
             while (!shutdown) {
-                moveBall(t, deltaTime);
-
                 try {
                     barrier.await();
                 } catch (InterruptedException e) {
@@ -101,6 +187,11 @@ public class GameMechanicMath implements Runnable {
                 } catch (BrokenBarrierException e) {
                     return;
                 }
+
+                // a pocketed ball stays where it dropped, as in step()
+                if (!shutdown && !ball.isInPocket()) {
+                    moveBall(t, deltaTime);
+                }
             }
         }
 
@@ -108,19 +199,28 @@ public class GameMechanicMath implements Runnable {
             if (ball.getVelocity() == 0) {
                 return;
             }
-            double[] directionVector = ball.getDirection();
-            double newX = ball.getX() + directionVector[0] * ball.getVelocity() * deltaTime;
-            double newY = ball.getY() + directionVector[1] * ball.getVelocity() * deltaTime;
+            double newX = ball.getX() + ball.getDirectionX() * ball.getVelocity() * deltaTime;
+            double newY = ball.getY() + ball.getDirectionY() * ball.getVelocity() * deltaTime;
             double distanceToTravel = VectorCalc.distanceBetweenPoints(new double[]{newX, newY},
                     new double[]{ball.getX(), ball.getY()});
 
             if (!hitOtherBall(findBallToHit(), distanceToTravel)) {
-                double[] newPosition = hitTableBorder(newX, newY, distanceToTravel, 0);
+                double[] newPosition = hitTableBorder(newX, newY);
                 ball.setPosition(newPosition[0], newPosition[1]);
             }
 
-            double newVelocity = ball.getVelocity() - ball.getVelocity() * 0.9 * deltaTime;
-            if (newVelocity <= 1) {
+            int pocket = table.getPockets().pocketAt(ball.getX(), ball.getY());
+            if (pocket >= 0 && !ball.isInPocket()) {
+                // the ball drops, it neither rolls on nor reports the pocket again on the next tick
+                ball.setIsInPocket();
+                ball.setVelocity(0);
+                pocketed = true;
+                pocketIndex = pocket;
+                return;
+            }
+
+            double newVelocity = ball.getVelocity() - ball.getVelocity() * params.getFriction() * deltaTime;
+            if (newVelocity <= params.getStopVelocity()) {
                 ball.setVelocity(0);
             } else {
                 ball.setVelocity(newVelocity);
@@ -141,9 +241,9 @@ public class GameMechanicMath implements Runnable {
             // (x - x1) / v1 = (y - y1) / v2
             // v2*x - x1*v2 = v1*y - y1*v1
             // v2*x - v1*y + y1*v1 - x1*v2 = 0
-            double a = ball.getDirection()[1];
-            double b = -ball.getDirection()[0];
-            double c = ball.getY() * ball.getDirection()[0] - ball.getX() * ball.getDirection()[1];
+            double a = ball.getDirectionY();
+            double b = -ball.getDirectionX();
+            double c = ball.getY() * ball.getDirectionX() - ball.getX() * ball.getDirectionY();
             double m = -a / b;
             double q = -c / b;
 
@@ -158,10 +258,11 @@ public class GameMechanicMath implements Runnable {
             double distanceBetweenBallsMin = Integer.MAX_VALUE;
             for (Ball otherBall : balls) {
                 if (!ball.equals(otherBall)) {
-                    x0 = otherBall.getX();
-                    y0 = otherBall.getY();
+                    otherBall.getState().read(other);
+                    x0 = other[BallState.X];
+                    y0 = other[BallState.Y];
                     distance = Math.abs(a * x0 + b * y0 + c) / Math.sqrt(a * a + b * b);
-                    if (distance <= Ball.DIMENSION) {
+                    if (distance <= params.getBallDimension()) {
                         double x1 = 0, y1 = 0;
                         // ball equation: (x - ball.getX)^2 + (y - ball.getY)^2 = Ball.DIMENSION
                         // line equation: a*x + b*y + c = 0    y = mx + q
@@ -170,9 +271,9 @@ public class GameMechanicMath implements Runnable {
                             // (x - getX)^2 + (y - getY)^2 - Ball.DIMENSION^2 = 0
                             // y^2 - 2*getY*y + getY^2 + (x - getX)^2 - Ball.DIMENSION^2 = 0;
                             double aEq = 1;
-                            double bEq = -2 * otherBall.getY();
-                            double cEq = otherBall.getY() * otherBall.getY() + (x1 - otherBall.getX())
-                                    * (x1 - otherBall.getX()) - Ball.DIMENSION / 2. * Ball.DIMENSION / 2.;
+                            double bEq = -2 * y0;
+                            double cEq = y0 * y0 + (x1 - x0)
+                                    * (x1 - x0) - params.getBallDimension() / 2. * params.getBallDimension() / 2.;
 
                             double deltaEq = bEq * bEq - 4 * aEq * cEq;
                             if (deltaEq > 0) {
@@ -195,8 +296,8 @@ public class GameMechanicMath implements Runnable {
                             // (m*x + (q - getY))^2   =>   m^2*x^2 + 2*m*(q - getY)*x + (q - getY)^2
                             // x^2 - 2*getX*x + getX^2 + m^2*x^2 + 2*m*(q - getY)*x + (q - getY)^2 - Ball.DIMENSION^2 = 0
                             double aEq = 1 + m * m;
-                            double bEq = -2 * otherBall.getX() + 2 * m * (q - otherBall.getY());
-                            double cEq = otherBall.getX() * otherBall.getX() + (q - otherBall.getY()) * (q - otherBall.getY()) - Ball.DIMENSION / 2. * Ball.DIMENSION / .2;
+                            double bEq = -2 * x0 + 2 * m * (q - y0);
+                            double cEq = x0 * x0 + (q - y0) * (q - y0) - params.getBallDimension() / 2. * params.getBallDimension() / .2;
 
                             if (aEq != 0) {
                                 double x2 = 0;
@@ -229,9 +330,9 @@ public class GameMechanicMath implements Runnable {
                             double[] vectorIntersection = new double[]{x1 - ball.getX(), y1 - ball.getY()};
                             if (Math.abs(cross(ball.getDirection(), vectorIntersection)) < 0.01) {
                                 distanceBetweenBalls = VectorCalc.distanceBetweenPoints(
-                                        new double[]{otherBall.getX(), otherBall.getY()},
+                                        new double[]{x0, y0},
                                         new double[]{ball.getX(), ball.getY()});
-                                if (distanceBetweenBalls < Ball.DIMENSION
+                                if (distanceBetweenBalls < params.getBallDimension()
                                         && distanceBetweenBalls <= distanceBetweenBallsMin) {
                                     distanceBetweenBallsMin = distanceBetweenBalls;
                                     ballToHit = otherBall;
@@ -246,32 +347,19 @@ public class GameMechanicMath implements Runnable {
         }
 
         private boolean hitOtherBall(Ball ballToHit, double distanceToTravel) {
-            if (ballToHit != null) {
-                double distanceBetweenBalls = VectorCalc.distanceBetweenPoints(new double[]{ballToHit.getX(), ballToHit.getY()},
-                        new double[]{ball.getX(), ball.getY()});
-                if (distanceBetweenBalls - Ball.DIMENSION <= distanceToTravel) {
-                    double[] hitVector = new double[2];
-                    hitVector[0] = ball.getX() - ballToHit.getX();
-                    hitVector[1] = ball.getY() - ballToHit.getY();
-                    hitVector = normalizeVector(hitVector);
-
-                    double[] reflectionVector = reflectVector(ball.getDirection(), hitVector);
-                    reflectionVector = normalizeVector(reflectionVector);
-
-                    hitVector[0] = ballToHit.getX() - ball.getX();
-                    hitVector[1] = ballToHit.getY() - ball.getY();
-                    hitVector = VectorCalc.normalizeVector(hitVector);
-                    ballToHit.setDirection(hitVector);
-                    ballToHit.setVelocity(ball.getVelocity());
-
-                    double distanceToOtherBall = distanceToTravel - (distanceBetweenBalls - Ball.DIMENSION) - 1;
-                    ball.setPosition(ball.getX() + distanceToOtherBall * ball.getDirection()[0],
-                            ball.getY() + distanceToOtherBall * ball.getDirection()[1]);
-                    ball.setDirection(reflectionVector);
-
-                    double distanceLeft = distanceToTravel - distanceToOtherBall + 1;
-                    ball.setPosition(ball.getX() + distanceLeft * ball.getDirection()[0],
-                            ball.getY() + distanceLeft * ball.getDirection()[1]);
+            if (ballToHit == null) {
+                return false;
+            }
+            ballToHit.getState().read(other);
+            if (ContactSolver.isApproaching(ball, other)) {
+                double distanceBetweenBalls = VectorCalc.distanceBetweenPoints(
+                        new double[]{other[BallState.X], other[BallState.Y]}, new double[]{ball.getX(), ball.getY()});
+                if (distanceBetweenBalls - params.getBallDimension() <= distanceToTravel) {
+                    // roll up to the contact point and leave the impulse to the contact solver
+                    double distanceToOtherBall = Math.max(0, distanceBetweenBalls - params.getBallDimension());
+                    ball.setPosition(ball.getX() + distanceToOtherBall * ball.getDirectionX(),
+                            ball.getY() + distanceToOtherBall * ball.getDirectionY());
+                    contactSolver.addContact(ball, ballToHit);
                     return true;
                 }
             }
@@ -279,97 +367,41 @@ public class GameMechanicMath implements Runnable {
             return false;
         }
 
-        private double[] hitTableBorder(double newX, double newY, double distanceToTravel, int loop) {
-            if (loop > 10) {
-                return new double[]{newX, newY};
-            }
-            /*  y1 = a*x1 + b
-                y2 = a*x2 + b
-
-                b = y1 - a*x1
-                y2 = a*x2 + (y1 - a*x1)
-                a = (y2 - y1) / (x2 - x1)
-             */
-            boolean doReflection = false;
-            double aDirectionLine = (newY - ball.getY()) / (newX - ball.getX());
-            double bDirectionLine = ball.getY() - aDirectionLine * ball.getX();
-            double[] intersectionPoint = new double[2];
-            double[] hitVector = new double[2];
-            if (newX < table.getX()) {
-                doReflection = true;
-
-                intersectionPoint[0] = table.getX();
-                intersectionPoint[1] = aDirectionLine * table.getX() + bDirectionLine;
-
-                hitVector[0] = 1;
-                hitVector[1] = 0;
-            } else if (newX > table.getX() + table.getWidth()) {
-                doReflection = true;
-
-                double ballX = table.getX() + table.getWidth();
-                intersectionPoint[0] = ballX;
-                intersectionPoint[1] = aDirectionLine * ballX + bDirectionLine;
-
-                hitVector[0] = -1;
-                hitVector[1] = 0;
-            } else if (newY < table.getY()) {
-                doReflection = true;
-
-                intersectionPoint[0] = (table.getY() - bDirectionLine) / aDirectionLine;
-                intersectionPoint[1] = table.getY();
-
-                hitVector[0] = 0;
-                hitVector[1] = 1;
-            } else if (newY > table.getY() + table.getHeight()) {
-                doReflection = true;
-
-                intersectionPoint[0] = (table.getY() + table.getHeight() - bDirectionLine) / aDirectionLine;
-                intersectionPoint[1] = table.getY() + table.getHeight();
-
-                hitVector[0] = 0;
-                hitVector[1] = -1;
+        private double[] hitTableBorder(double newX, double newY) {
+            double fromX = ball.getX();
+            double fromY = ball.getY();
+            double directionX = ball.getDirectionX();
+            double directionY = ball.getDirectionY();
+            boolean reflected = false;
+            for (int loop = 0; loop <= 10 && table.getCushions().firstHit(fromX, fromY, newX, newY, cushionHitInfo); loop++) {
+                reflected = true;
+                cushionHit = true;
+                cushionX = cushionHitInfo[1];
+                cushionY = cushionHitInfo[2];
+                double normalX = cushionHitInfo[3];
+                double normalY = cushionHitInfo[4];
+
+                // mirror the rest of the path and the direction around the cushion
+                double remainingX = newX - cushionX;
+                double remainingY = newY - cushionY;
+                double remainingDot = remainingX * normalX + remainingY * normalY;
+                newX = cushionX + remainingX - 2 * remainingDot * normalX;
+                newY = cushionY + remainingY - 2 * remainingDot * normalY;
+
+                double directionDot = directionX * normalX + directionY * normalY;
+                directionX -= 2 * directionDot * normalX;
+                directionY -= 2 * directionDot * normalY;
+
+                fromX = cushionX;
+                fromY = cushionY;
             }
 
-            if (doReflection) {
-                double distanceToBorder = Math.sqrt((intersectionPoint[0] - ball.getX()) * (intersectionPoint[0] - ball.getX())
-                        + (intersectionPoint[1] - ball.getY()) * (intersectionPoint[1] - ball.getY()));
-                double distanceAfterHitBorder = distanceToTravel - distanceToBorder;
-
-                double[] reflectionVector = reflectVector(ball.getDirection(), hitVector);
-                reflectionVector = normalizeVector(reflectionVector);
-
-                newX = intersectionPoint[0] + distanceAfterHitBorder * reflectionVector[0];
-                newY = intersectionPoint[1] + distanceAfterHitBorder * reflectionVector[1];
-
-                ball.setDirection(reflectionVector);
-                return hitTableBorder(newX, newY, distanceAfterHitBorder, loop + 1);
+            if (reflected) {
+                ball.setDirection(directionX, directionY);
             }
-
             return new double[]{newX, newY};
         }
 
-        private double[] subtractVector(double[] v1, double[] v2) {
-            return new double[]{v1[0] - v2[0], v1[1] - v2[1]};
-        }
-
-        private double[] multiplyVector(double scalar, double[] v) {
-            return new double[]{v[0] * scalar, v[1] * scalar};
-        }
-
-        private double[] normalizeVector(double[] vector) {
-            double magnitude = Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1]);
-            return new double[]{vector[0] / magnitude, vector[1] / magnitude};
-        }
-
-        private double[] reflectVector(double[] sourceVector, double[] surfaceVector) {
-            return subtractVector(sourceVector, multiplyVector(2
-                    * this.dot(sourceVector, surfaceVector), surfaceVector));
-        }
-
-        private double dot(double[] v1, double[] v2) {
-            return v1[0] * v2[0] + v1[1] * v2[1];
-        }
-
         private double cross(double[] v1, double[] v2) {
             return v1[0] * v2[1] - v1[1] * v2[0];
         }
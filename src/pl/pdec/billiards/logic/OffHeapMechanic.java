@@ -0,0 +1,250 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallStateBuffer;
+import pl.pdec.billiards.components.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+public class OffHeapMechanic implements PhysicsEngine {
+    private final Table table;
+    private final List<Ball> balls;
+    private final BallStateBuffer state;
+    private final PhysicsParams params;
+    private final double dimension;
+    private final double[] cushionHitInfo = new double[5];
+    private final double originX, originY;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] cellBalls;
+    private final int[] ballCell;
+    private volatile EventStream events = null;
+    private long tick = 0;
+
+    public OffHeapMechanic(Table table, Collection<Ball> balls) {
+        this(table, balls, BallStateBuffer.allocate(balls.size()));
+    }
+
+    public OffHeapMechanic(Table table, Collection<Ball> balls, BallStateBuffer state) {
+        this(table, balls, state, PhysicsParams.DEFAULT);
+    }
+
+    public OffHeapMechanic(Table table, Collection<Ball> balls, BallStateBuffer state, PhysicsParams params) {
+        this.table = table;
+        this.params = params;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (balls == null) {
+            throw new RuntimeException("Balls collection cannot be null");
+        }
+        if (this.params == null) {
+            throw new RuntimeException("Physics params cannot be null");
+        }
+        this.dimension = params.getBallDimension();
+        this.balls = new ArrayList<>(balls);
+        this.state = state;
+        this.state.load(this.balls);
+
+        // broad phase grid, one ball diameter per cell, so contacts are only searched in the 3x3 neighbourhood
+        originX = table.getX() - dimension;
+        originY = table.getY() - dimension;
+        columns = (int) ((table.getWidth() + 2 * dimension) / dimension) + 1;
+        rows = (int) ((table.getHeight() + 2 * dimension) / dimension) + 1;
+        cellStart = new int[columns * rows + 1];
+        cellBalls = new int[this.balls.size()];
+        ballCell = new int[this.balls.size()];
+    }
+
+    public BallStateBuffer getState() {
+        return state;
+    }
+
+    @Override
+    public void setEventStream(EventStream events) {
+        this.events = events;
+    }
+
+    // the grid engine has no worker threads, a tick runs on the caller; the balls are reloaded first so that
+    // a stick strike written into the Ball objects is not lost, and the result is copied back afterwards
+    @Override
+    public void integrate(double t, double deltaTime) {
+        state.load(balls);
+        step(t, deltaTime);
+        sync();
+    }
+
+    public void step(double t, double deltaTime) {
+        int count = state.size();
+        for (int i = 0; i < count; i++) {
+            if (!state.isInPocket(i)) {
+                moveBall(i, t, deltaTime);
+            }
+        }
+        buildGrid(count);
+        resolveContacts(count, t);
+        state.setClock(++tick, t + deltaTime);
+    }
+
+    // copies the off-heap state back into the Ball objects, e.g. for drawing
+    public void sync() {
+        for (int i = 0; i < balls.size(); i++) {
+            state.copyTo(i, balls.get(i));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        state.force();
+    }
+
+    private void moveBall(int i, double t, double deltaTime) {
+        double velocity = state.getVelocity(i);
+        if (velocity <= 0.01) {
+            return;
+        }
+        double fromX = state.getX(i);
+        double fromY = state.getY(i);
+        double directionX = state.getDirectionX(i);
+        double directionY = state.getDirectionY(i);
+        double newX = fromX + directionX * velocity * deltaTime;
+        double newY = fromY + directionY * velocity * deltaTime;
+
+        boolean reflected = false;
+        for (int loop = 0; loop <= 10 && table.getCushions().firstHit(fromX, fromY, newX, newY, cushionHitInfo); loop++) {
+            reflected = true;
+            double hitX = cushionHitInfo[1];
+            double hitY = cushionHitInfo[2];
+            double normalX = cushionHitInfo[3];
+            double normalY = cushionHitInfo[4];
+
+            double remainingX = newX - hitX;
+            double remainingY = newY - hitY;
+            double remainingDot = remainingX * normalX + remainingY * normalY;
+            newX = hitX + remainingX - 2 * remainingDot * normalX;
+            newY = hitY + remainingY - 2 * remainingDot * normalY;
+
+            double directionDot = directionX * normalX + directionY * normalY;
+            directionX -= 2 * directionDot * normalX;
+            directionY -= 2 * directionDot * normalY;
+
+            fromX = hitX;
+            fromY = hitY;
+            publish(EventStream.CUSHION_HIT, state.getNumber(i), -1, hitX, hitY, t);
+        }
+        if (reflected) {
+            state.setDirection(i, directionX, directionY);
+        }
+        state.setPosition(i, newX, newY);
+
+        int pocket = table.getPockets().pocketAt(newX, newY);
+        if (pocket >= 0) {
+            state.setInPocket(i);
+            state.setVelocity(i, 0);
+            publish(EventStream.POCKET, state.getNumber(i), pocket, newX, newY, t);
+            return;
+        }
+
+        double newVelocity = velocity - velocity * params.getFriction() * deltaTime;
+        state.setVelocity(i, newVelocity <= params.getStopVelocity() ? 0 : newVelocity);
+    }
+
+    private void buildGrid(int count) {
+        // counting sort of the balls by cell, pocketed balls are left out
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < count; i++) {
+            ballCell[i] = state.isInPocket(i) ? -1 : cell(state.getX(i), state.getY(i));
+            if (ballCell[i] >= 0) {
+                cellStart[ballCell[i] + 1]++;
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (int i = 0; i < count; i++) {
+            if (ballCell[i] >= 0) {
+                cellBalls[cellStart[ballCell[i]]++] = i;
+            }
+        }
+        // the fill pass advanced every start to the next cell's start, shift them back
+        for (int c = columns * rows; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    private void resolveContacts(int count, double t) {
+        for (int i = 0; i < count; i++) {
+            int cell = ballCell[i];
+            if (cell < 0) {
+                continue;
+            }
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                    int neighbour = r * columns + c;
+                    for (int k = cellStart[neighbour]; k < cellStart[neighbour + 1]; k++) {
+                        int j = cellBalls[k];
+                        if (j > i) {
+                            resolve(i, j, t);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void resolve(int a, int b, double t) {
+        double nx = state.getX(b) - state.getX(a);
+        double ny = state.getY(b) - state.getY(a);
+        double distanceSquared = nx * nx + ny * ny;
+        if (distanceSquared >= dimension * dimension || distanceSquared == 0) {
+            return;
+        }
+        double distance = Math.sqrt(distanceSquared);
+        nx /= distance;
+        ny /= distance;
+
+        double avx = state.getDirectionX(a) * state.getVelocity(a);
+        double avy = state.getDirectionY(a) * state.getVelocity(a);
+        double bvx = state.getDirectionX(b) * state.getVelocity(b);
+        double bvy = state.getDirectionY(b) * state.getVelocity(b);
+        double approach = (avx - bvx) * nx + (avy - bvy) * ny;
+        if (approach > 0) {
+            double impulse = (1 + params.getRestitution()) / 2 * approach;
+            setVelocity(a, avx - impulse * nx, avy - impulse * ny);
+            setVelocity(b, bvx + impulse * nx, bvy + impulse * ny);
+            publish(EventStream.BALL_HIT, state.getNumber(a), state.getNumber(b),
+                    (state.getX(a) + state.getX(b)) / 2, (state.getY(a) + state.getY(b)) / 2, t);
+        }
+
+        double overlap = (dimension - distance) / 2;
+        state.setPosition(a, state.getX(a) - nx * overlap, state.getY(a) - ny * overlap);
+        state.setPosition(b, state.getX(b) + nx * overlap, state.getY(b) + ny * overlap);
+    }
+
+    private void setVelocity(int index, double vx, double vy) {
+        double speed = Math.sqrt(vx * vx + vy * vy);
+        if (speed > 0) {
+            state.setDirection(index, vx / speed, vy / speed);
+        }
+        state.setVelocity(index, speed);
+    }
+
+    private int cell(double x, double y) {
+        int column = Math.max(0, Math.min(columns - 1, (int) ((x - originX) / dimension)));
+        int row = Math.max(0, Math.min(rows - 1, (int) ((y - originY) / dimension)));
+        return row * columns + column;
+    }
+
+    private void publish(int type, int ball, int otherBall, double x, double y, double t) {
+        EventStream events = this.events;
+        if (events != null) {
+            events.publish(type, ball, otherBall, x, y, t);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package pl.pdec.billiards.logic;
+
+public interface PhysicsEngine {
+    // advances every ball by deltaTime, the Ball objects hold the new state when this returns
+    void integrate(double t, double deltaTime);
+
+    void setEventStream(EventStream events);
+
+    void shutdown();
+}
@@ -0,0 +1,58 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallStateBuffer;
+import pl.pdec.billiards.components.Table;
+
+import java.util.Collection;
+
+public enum PhysicsEngineType {
+    MECHANIC("Segment sweep", true, true) {
+        @Override
+        public PhysicsEngine create(Table table, Collection<Ball> balls, boolean threaded, PhysicsParams params) {
+            return new GameMechanic(table, balls, threaded, params);
+        }
+    },
+    MATH("Contact point", true, true) {
+        @Override
+        public PhysicsEngine create(Table table, Collection<Ball> balls, boolean threaded, PhysicsParams params) {
+            return new GameMechanicMath(table, balls, threaded, params);
+        }
+    },
+    OFF_HEAP("Off-heap grid", false, false) {
+        @Override
+        public PhysicsEngine create(Table table, Collection<Ball> balls, boolean threaded, PhysicsParams params) {
+            return new OffHeapMechanic(table, balls, BallStateBuffer.allocate(balls.size()), params);
+        }
+    };
+
+    private final String label;
+    private final boolean threadable;
+    private final boolean pairwise;
+
+    PhysicsEngineType(String label, boolean threadable, boolean pairwise) {
+        this.label = label;
+        this.threadable = threadable;
+        this.pairwise = pairwise;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // engines that cannot run a thread per ball ignore the threaded flag and step on the calling thread
+    public boolean isThreadable() {
+        return threadable;
+    }
+
+    // engines that test every pair of balls each substep, their ticks grow with the square of the ball count
+    public boolean isPairwise() {
+        return pairwise;
+    }
+
+    public PhysicsEngine create(Table table, Collection<Ball> balls, boolean threaded) {
+        return create(table, balls, threaded, PhysicsParams.DEFAULT);
+    }
+
+    public abstract PhysicsEngine create(Table table, Collection<Ball> balls, boolean threaded, PhysicsParams params);
+}
@@ -0,0 +1,114 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+
+public final class PhysicsParams {
+    public static final PhysicsParams DEFAULT = new PhysicsParams(0.9, 1, 10, Ball.DIMENSION, 0.95);
+
+    private final double friction;
+    private final double stopVelocity;
+    private final double baseVelocity;
+    private final int ballDimension;
+    private final double restitution;
+
+    public PhysicsParams(double friction, double stopVelocity, double baseVelocity, int ballDimension,
+                         double restitution) {
+        if (friction < 0) {
+            throw new RuntimeException("Friction cannot be negative");
+        }
+        if (stopVelocity < 0) {
+            throw new RuntimeException("Stop velocity cannot be negative");
+        }
+        if (baseVelocity <= 0) {
+            throw new RuntimeException("Base velocity must be positive");
+        }
+        if (ballDimension <= 0) {
+            throw new RuntimeException("Ball dimension must be positive");
+        }
+        if (restitution < 0 || restitution > 1) {
+            throw new RuntimeException("Restitution must be between 0 and 1");
+        }
+        this.friction = friction;
+        this.stopVelocity = stopVelocity;
+        this.baseVelocity = baseVelocity;
+        this.ballDimension = ballDimension;
+        this.restitution = restitution;
+    }
+
+    // fraction of the velocity lost per second, v -= v * friction * dt
+    public double getFriction() {
+        return friction;
+    }
+
+    // below this velocity a ball is considered at rest
+    public double getStopVelocity() {
+        return stopVelocity;
+    }
+
+    // strike velocity per unit of stick power
+    public double getBaseVelocity() {
+        return baseVelocity;
+    }
+
+    public int getBallDimension() {
+        return ballDimension;
+    }
+
+    public double getRestitution() {
+        return restitution;
+    }
+
+    // the closed form of the v -= v * friction * dt decay the engines integrate: moves state, holding x, y and
+    // velocity, on by elapsed seconds along the direction; the ball stops for good once the velocity decays to the
+    // stop velocity, so stepping in pieces lands where one step over the whole time does
+    public void advance(double[] state, double directionX, double directionY, double elapsed) {
+        double velocity = state[2];
+        if (velocity <= stopVelocity) {
+            state[2] = 0;
+            return;
+        }
+        double current, distance;
+        if (friction > 0) {
+            current = velocity * Math.exp(-friction * elapsed);
+            if (current <= stopVelocity) {
+                current = 0;
+                distance = (velocity - stopVelocity) / friction;
+            } else {
+                distance = (velocity - current) / friction;
+            }
+        } else {
+            current = velocity;
+            distance = velocity * elapsed;
+        }
+        state[0] += directionX * distance;
+        state[1] += directionY * distance;
+        state[2] = current;
+    }
+
+    public PhysicsParams withFriction(double friction) {
+        return new PhysicsParams(friction, stopVelocity, baseVelocity, ballDimension, restitution);
+    }
+
+    public PhysicsParams withStopVelocity(double stopVelocity) {
+        return new PhysicsParams(friction, stopVelocity, baseVelocity, ballDimension, restitution);
+    }
+
+    public PhysicsParams withBaseVelocity(double baseVelocity) {
+        return new PhysicsParams(friction, stopVelocity, baseVelocity, ballDimension, restitution);
+    }
+
+    public PhysicsParams withBallDimension(int ballDimension) {
+        return new PhysicsParams(friction, stopVelocity, baseVelocity, ballDimension, restitution);
+    }
+
+    public PhysicsParams withRestitution(double restitution) {
+        return new PhysicsParams(friction, stopVelocity, baseVelocity, ballDimension, restitution);
+    }
+
+    @Override
+    public String toString() {
+        return "PhysicsParams{friction=" + friction + ", stopVelocity=" + stopVelocity
+                + ", baseVelocity=" + baseVelocity + ", ballDimension=" + ballDimension
+                + ", restitution=" + restitution + '}';
+    }
+}
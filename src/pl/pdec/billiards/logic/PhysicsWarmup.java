@@ -0,0 +1,73 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public final class PhysicsWarmup {
+    private static final double FRAME_TIME = 1 / 60.0;
+
+    private PhysicsWarmup() {
+    }
+
+    // runs break-like shots on a throwaway table so findBallToHit, hitTableBorder and the contact solver are
+    // compiled before the first real shot; returns the number of shots that fit in the budget
+    public static int warmUp(int shots, double budgetSeconds) {
+        long deadline = System.nanoTime() + (long) (budgetSeconds * 1e9);
+        Table table = new Table(0, 0, 450, 600);
+        ShotSimulator simulator = new ShotSimulator(table);
+        AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        Random random = new Random(1);
+
+        int shot = 0;
+        for (; shot < shots && System.nanoTime() < deadline; shot++) {
+            // a fan of breaks around the rack apex, with soft and hard strikes, reaches every branch of the collision code
+            double angle = -Math.PI / 2 + (random.nextDouble() - 0.5) * 0.6;
+            double velocity = PhysicsParams.DEFAULT.getBaseVelocity() * (50 + random.nextDouble() * 350);
+            if (shot % 2 == 0) {
+                simulator.simulate(Racks.nineBall(table), Math.cos(angle), Math.sin(angle), velocity);
+            } else {
+                // Game keeps its balls in a HashSet, a profile that only ever saw lists would deoptimize on the
+                // first real shot
+                Collection<Ball> balls = new HashSet<>(Racks.nineBall(table));
+                strike(balls, angle, velocity);
+                GameMechanic mechanic = new GameMechanic(table, balls, false);
+                double t = 0;
+                for (int tick = 0; tick < 600 && ShotSimulator.isMoving(balls); tick++) {
+                    int substeps = substepper.substeps(balls, FRAME_TIME);
+                    for (int i = 0; i < substeps; i++) {
+                        mechanic.step(t, FRAME_TIME / substeps);
+                        balls.removeIf(Ball::isInPocket);
+                        t += FRAME_TIME / substeps;
+                    }
+                }
+            }
+        }
+
+        // a few threaded ticks so the barrier handshake in integrate() is not cold either
+        Collection<Ball> balls = new HashSet<>(Racks.nineBall(table));
+        strike(balls, -Math.PI / 2, 3000);
+        GameMechanic mechanic = new GameMechanic(table, balls);
+        double t = 0;
+        for (int tick = 0; tick < 60; tick++) {
+            mechanic.integrate(t, FRAME_TIME);
+            t += FRAME_TIME;
+        }
+        mechanic.shutdown();
+        return shot;
+    }
+
+    private static void strike(Collection<Ball> balls, double angle, double velocity) {
+        for (Ball ball : balls) {
+            if (ball.isWhite()) {
+                ball.setDirection(Math.cos(angle), Math.sin(angle));
+                ball.setVelocity(velocity);
+            }
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+// approximate k-nearest search over table positions: every position becomes a canonical vector, random
+// projections hash it into a few bucket tables and the candidates found there are re-ranked exactly
+public class PositionIndex {
+    // where a pocketed or missing ball sits in the vector: a ball present in one position and absent in the other
+    // costs at least 2 * 10^2 squared distance, more than all present balls moving corner to corner (2 per slot)
+    // can add up to below MAX_SLOTS, so positions with the same balls on the table always rank first
+    private static final float ABSENT = -10;
+    private static final int MAX_SLOTS = 99;
+    private static final int MAX_CANDIDATES = 50_000;
+    // a white this close to a centre line may be recorded under either mirror, queries try both
+    private static final double MIRROR_MARGIN = 0.05;
+
+    private final Table table;
+    private final int slots, dimension;
+    private final int[][] groups;
+    private final int tableCount, hashCount;
+    private final float bucketWidth;
+    private final float[] projections;
+    private final float[] offsets;
+    private final Buckets[] buckets;
+
+    private float[] vectors;
+    private long[] tags;
+    private byte[] mirrors;
+    private int size = 0;
+
+    // query scratch, queries and inserts are serialized on the index
+    private final float[] query;
+    private final int[] codes;
+    private final float[] remainders;
+    private int[] seen;
+    private int epoch = 0;
+
+    public PositionIndex(Table table, int slots) {
+        this(table, slots, null, 16, 8, 0.35, 1);
+    }
+
+    // balls whose numbers share a group id are interchangeable, e.g. snooker reds; pass null when every ball
+    // is distinct
+    public PositionIndex(Table table, int slots, int[] groupOfNumber, int tables, int hashes, double bucketWidth,
+                         long seed) {
+        this.table = table;
+        this.slots = slots;
+        this.dimension = slots * 2;
+        this.tableCount = tables;
+        this.hashCount = hashes;
+        this.bucketWidth = (float) bucketWidth;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (slots < 1 || tables < 1 || hashes < 1 || bucketWidth <= 0) {
+            throw new RuntimeException("Index needs at least one slot, table and hash and a positive bucket width");
+        }
+        if (slots > MAX_SLOTS) {
+            throw new RuntimeException("Index holds at most " + MAX_SLOTS + " ball slots");
+        }
+        if (groupOfNumber != null && groupOfNumber.length != slots) {
+            throw new RuntimeException("Ball groups must cover all " + slots + " slots");
+        }
+        this.groups = groupMembers(groupOfNumber);
+
+        Random random = new Random(seed);
+        projections = new float[tables * hashes * dimension];
+        offsets = new float[tables * hashes];
+        for (int i = 0; i < projections.length; i++) {
+            projections[i] = (float) random.nextGaussian();
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = (float) (random.nextDouble() * bucketWidth);
+        }
+        buckets = new Buckets[tables];
+        for (int t = 0; t < tables; t++) {
+            buckets[t] = new Buckets();
+        }
+
+        int capacity = 1024;
+        vectors = new float[capacity * dimension];
+        tags = new long[capacity];
+        mirrors = new byte[capacity];
+        seen = new int[capacity];
+        query = new float[dimension];
+        codes = new int[hashes];
+        remainders = new float[hashes];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // the tag is handed back with every match, e.g. a shot number or a file offset
+    public synchronized int add(Collection<Ball> balls, long tag) {
+        if (size == tags.length) {
+            grow();
+        }
+        int id = size;
+        mirrors[id] = (byte) canonicalize(balls, query);
+        System.arraycopy(query, 0, vectors, id * dimension, dimension);
+        tags[id] = tag;
+        for (int t = 0; t < tableCount; t++) {
+            hash(t, query);
+            buckets[t].add(key(), id);
+        }
+        size++;
+        return id;
+    }
+
+    // approximate, closest first; fewer than k matches come back when the rest are too far away to share a bucket
+    public synchronized List<Match> nearest(Collection<Ball> balls, int k) {
+        int flags = mirrorFlags(balls);
+        int ambiguous = ambiguousFlags(balls);
+        TopK top = new TopK(k);
+        int candidates = 0;
+        for (int variant = 0; variant < 4; variant++) {
+            if ((variant & ~ambiguous) != 0) {
+                continue;
+            }
+            canonicalize(balls, query, flags ^ variant);
+            nextEpoch();
+            for (int t = 0; t < tableCount && candidates < MAX_CANDIDATES; t++) {
+                hash(t, query);
+                candidates += visit(buckets[t].head(key()), t, flags ^ variant, top);
+                // multi-probe: also look into the neighbouring bucket on the side each projection came closest to
+                for (int h = 0; h < hashCount && candidates < MAX_CANDIDATES; h++) {
+                    int delta = remainders[h] < 0.5f ? -1 : 1;
+                    codes[h] += delta;
+                    candidates += visit(buckets[t].head(key()), t, flags ^ variant, top);
+                    codes[h] -= delta;
+                }
+            }
+        }
+        // nothing hashed anywhere near, e.g. a position unlike anything recorded
+        if (top.count == 0) {
+            return nearestExact(balls, k);
+        }
+        return top.matches();
+    }
+
+    // linear scan, for positions the hashes miss and for measuring recall
+    public synchronized List<Match> nearestExact(Collection<Ball> balls, int k) {
+        int flags = canonicalize(balls, query);
+        TopK top = new TopK(k);
+        for (int id = 0; id < size; id++) {
+            top.offer(id, distance(id), flags);
+        }
+        return top.matches();
+    }
+
+    // positions normalized to the table, mirrored so the white lies in the top left quarter and interchangeable
+    // balls sorted by position; returns the mirror flags, bit 0 for x and bit 1 for y
+    public int canonicalize(Collection<Ball> balls, float[] target) {
+        int flags = mirrorFlags(balls);
+        canonicalize(balls, target, flags);
+        return flags;
+    }
+
+    private int mirrorFlags(Collection<Ball> balls) {
+        for (Ball ball : balls) {
+            if (ball.isWhite() && !ball.isInPocket()) {
+                return (normalizedX(ball.getX()) > 0.5 ? 1 : 0) | (normalizedY(ball.getY()) > 0.5 ? 2 : 0);
+            }
+        }
+        return 0;
+    }
+
+    private int ambiguousFlags(Collection<Ball> balls) {
+        for (Ball ball : balls) {
+            if (ball.isWhite() && !ball.isInPocket()) {
+                return (Math.abs(normalizedX(ball.getX()) - 0.5) < MIRROR_MARGIN ? 1 : 0)
+                        | (Math.abs(normalizedY(ball.getY()) - 0.5) < MIRROR_MARGIN ? 2 : 0);
+            }
+        }
+        return 0;
+    }
+
+    private void canonicalize(Collection<Ball> balls, float[] target, int flags) {
+        Arrays.fill(target, ABSENT);
+        for (Ball ball : balls) {
+            int number = ball.getNumber();
+            if (number < 0 || number >= slots) {
+                throw new RuntimeException("Ball " + number + " does not fit an index of " + slots + " slots");
+            }
+            if (!ball.isInPocket()) {
+                double x = normalizedX(ball.getX());
+                double y = normalizedY(ball.getY());
+                target[number * 2] = (float) ((flags & 1) != 0 ? 1 - x : x);
+                target[number * 2 + 1] = (float) ((flags & 2) != 0 ? 1 - y : y);
+            }
+        }
+        for (int[] members : groups) {
+            sortGroup(members, target);
+        }
+    }
+
+    private double normalizedX(double x) {
+        return (x - table.getX()) / table.getWidth();
+    }
+
+    private double normalizedY(double y) {
+        return (y - table.getY()) / table.getHeight();
+    }
+
+    // insertion sort of the members' points by x then y, absent balls last; sorting is a cheap stand-in for the
+    // best assignment between two sets of identical balls and can pair them wrongly when two share almost one x
+    private static void sortGroup(int[] members, float[] vector) {
+        for (int i = 1; i < members.length; i++) {
+            float x = vector[members[i] * 2];
+            float y = vector[members[i] * 2 + 1];
+            int j = i - 1;
+            while (j >= 0 && after(vector[members[j] * 2], vector[members[j] * 2 + 1], x, y)) {
+                vector[members[j + 1] * 2] = vector[members[j] * 2];
+                vector[members[j + 1] * 2 + 1] = vector[members[j] * 2 + 1];
+                j--;
+            }
+            vector[members[j + 1] * 2] = x;
+            vector[members[j + 1] * 2 + 1] = y;
+        }
+    }
+
+    private static boolean after(float x1, float y1, float x2, float y2) {
+        if (x1 == ABSENT) {
+            return x2 != ABSENT;
+        }
+        if (x2 == ABSENT) {
+            return false;
+        }
+        return x1 > x2 || (x1 == x2 && y1 > y2);
+    }
+
+    private static int[][] groupMembers(int[] groupOfNumber) {
+        if (groupOfNumber == null) {
+            return new int[0][];
+        }
+        List<int[]> members = new ArrayList<>();
+        boolean[] done = new boolean[groupOfNumber.length];
+        for (int i = 0; i < groupOfNumber.length; i++) {
+            if (done[i]) {
+                continue;
+            }
+            int count = 0;
+            int[] group = new int[groupOfNumber.length];
+            for (int j = i; j < groupOfNumber.length; j++) {
+                if (groupOfNumber[j] == groupOfNumber[i]) {
+                    group[count++] = j;
+                    done[j] = true;
+                }
+            }
+            if (count > 1) {
+                members.add(Arrays.copyOf(group, count));
+            }
+        }
+        return members.toArray(new int[0][]);
+    }
+
+    private void hash(int table, float[] vector) {
+        int base = table * hashCount;
+        for (int h = 0; h < hashCount; h++) {
+            int row = (base + h) * dimension;
+            float projection = offsets[base + h];
+            for (int d = 0; d < dimension; d++) {
+                projection += projections[row + d] * vector[d];
+            }
+            float scaled = projection / bucketWidth;
+            float floor = (float) Math.floor(scaled);
+            codes[h] = (int) floor;
+            remainders[h] = scaled - floor;
+        }
+    }
+
+    private long key() {
+        long key = 0xcbf29ce484222325L;
+        for (int code : codes) {
+            key ^= code;
+            key *= 0x100000001b3L;
+        }
+        return key;
+    }
+
+    private int visit(int id, int table, int flags, TopK top) {
+        int visited = 0;
+        for (; id >= 0; id = buckets[table].next(id)) {
+            if (seen[id] != epoch) {
+                seen[id] = epoch;
+                top.offer(id, distance(id), flags);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    private float distance(int id) {
+        int offset = id * dimension;
+        float sum = 0;
+        for (int d = 0; d < dimension; d++) {
+            float difference = vectors[offset + d] - query[d];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    private void nextEpoch() {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            epoch = 1;
+        }
+    }
+
+    private void grow() {
+        int capacity = tags.length * 2;
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        tags = Arrays.copyOf(tags, capacity);
+        mirrors = Arrays.copyOf(mirrors, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        for (Buckets table : buckets) {
+            table.grow(capacity);
+        }
+    }
+
+    public static final class Match {
+        private final long tag;
+        private final double distance;
+        private final boolean mirroredX, mirroredY;
+
+        private Match(long tag, double distance, boolean mirroredX, boolean mirroredY) {
+            this.tag = tag;
+            this.distance = distance;
+            this.mirroredX = mirroredX;
+            this.mirroredY = mirroredY;
+        }
+
+        public long getTag() {
+            return tag;
+        }
+
+        // euclidean over the canonical vector, in table widths and heights
+        public double getDistance() {
+            return distance;
+        }
+
+        // the recorded position matches the query after flipping it across the vertical centre line
+        public boolean isMirroredX() {
+            return mirroredX;
+        }
+
+        public boolean isMirroredY() {
+            return mirroredY;
+        }
+    }
+
+    private final class TopK {
+        private final int[] ids;
+        private final float[] distances;
+        private final int[] flags;
+        private int count = 0;
+
+        private TopK(int k) {
+            ids = new int[k];
+            distances = new float[k];
+            flags = new int[k];
+        }
+
+        // the flags are the mirror the query was canonicalized with, a position can be offered once per mirror
+        private void offer(int id, float distance, int queryFlags) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    if (distance >= distances[i]) {
+                        return;
+                    }
+                    System.arraycopy(ids, i + 1, ids, i, count - i - 1);
+                    System.arraycopy(distances, i + 1, distances, i, count - i - 1);
+                    System.arraycopy(flags, i + 1, flags, i, count - i - 1);
+                    count--;
+                    break;
+                }
+            }
+            if (count == ids.length && distance >= distances[count - 1]) {
+                return;
+            }
+            int i = count < ids.length ? count++ : count - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                ids[i] = ids[i - 1];
+                distances[i] = distances[i - 1];
+                flags[i] = flags[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+            flags[i] = queryFlags;
+        }
+
+        private List<Match> matches() {
+            List<Match> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int relative = mirrors[ids[i]] ^ flags[i];
+                matches.add(new Match(tags[ids[i]], Math.sqrt(distances[i]), (relative & 1) != 0,
+                        (relative & 2) != 0));
+            }
+            return matches;
+        }
+    }
+
+    // open addressing from bucket key to the newest id in it, older ids are chained through next
+    private static final class Buckets {
+        private long[] keys = new long[1024];
+        private int[] heads = new int[1024];
+        private int used = 0;
+        private int[] next = new int[1024];
+
+        private int head(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); heads[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return heads[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private int next(int id) {
+            return next[id] - 1;
+        }
+
+        private void add(long key, int id) {
+            if ((used + 1) * 2 > keys.length) {
+                rehash();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (heads[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (heads[slot] == 0) {
+                keys[slot] = key;
+                used++;
+            }
+            next[id] = heads[slot];
+            heads[slot] = id + 1;
+        }
+
+        private void grow(int capacity) {
+            next = Arrays.copyOf(next, capacity);
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldHeads = heads;
+            keys = new long[oldKeys.length * 2];
+            heads = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldHeads[i] != 0) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (heads[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    heads[slot] = oldHeads[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) ((key ^ (key >>> 31)) * 0x9e3779b97f4a7c15L >>> 32) & mask;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public final class ShotKey {
+    private final int[] quantized;
+    private final long hash;
+
+    private ShotKey(int[] quantized) {
+        this.quantized = quantized;
+        long h = 0xcbf29ce484222325L;
+        for (int value : quantized) {
+            h ^= value;
+            h *= 0x100000001b3L;
+        }
+        this.hash = h ^ (h >>> 29);
+    }
+
+    public static ShotKey of(Collection<Ball> balls, double directionX, double directionY, double velocity,
+                             double positionQuantum, double angleQuantum, double velocityQuantum) {
+        int[] numbers = new int[balls.size()];
+        int count = 0;
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                numbers[count++] = ball.getNumber();
+            }
+        }
+        Arrays.sort(numbers, 0, count);
+
+        // number, x, y per ball on the table followed by the strike angle and velocity
+        int[] quantized = new int[count * 3 + 2];
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                int i = Arrays.binarySearch(numbers, 0, count, ball.getNumber()) * 3;
+                quantized[i] = ball.getNumber();
+                quantized[i + 1] = (int) Math.round(ball.getX() / positionQuantum);
+                quantized[i + 2] = (int) Math.round(ball.getY() / positionQuantum);
+            }
+        }
+        quantized[count * 3] = (int) Math.round(Math.atan2(directionY, directionX) / angleQuantum);
+        quantized[count * 3 + 1] = (int) Math.round(velocity / velocityQuantum);
+        return new ShotKey(quantized);
+    }
+
+    public long longHash() {
+        return hash;
+    }
+
+    int estimatedSize() {
+        return 32 + 16 + quantized.length * 4;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShotKey shotKey = (ShotKey) o;
+        return hash == shotKey.hash && Arrays.equals(quantized, shotKey.quantized);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+}
@@ -0,0 +1,75 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+
+import java.util.List;
+
+public final class ShotOutcome {
+    private final int[] numbers;
+    private final double[] x, y;
+    private final boolean[] pocketed;
+    private final int ticks;
+
+    ShotOutcome(List<Ball> balls, int ticks) {
+        int size = balls.size();
+        this.numbers = new int[size];
+        this.x = new double[size];
+        this.y = new double[size];
+        this.pocketed = new boolean[size];
+        this.ticks = ticks;
+        for (int i = 0; i < size; i++) {
+            Ball ball = balls.get(i);
+            numbers[i] = ball.getNumber();
+            x[i] = ball.getX();
+            y[i] = ball.getY();
+            pocketed[i] = ball.isInPocket();
+        }
+    }
+
+    public int size() {
+        return numbers.length;
+    }
+
+    public int getNumber(int index) {
+        return numbers[index];
+    }
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public double getY(int index) {
+        return y[index];
+    }
+
+    public boolean isPocketed(int index) {
+        return pocketed[index];
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public int getPocketedCount() {
+        int count = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            if (pocketed[i] && numbers[i] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean isWhitePocketed() {
+        for (int i = 0; i < numbers.length; i++) {
+            if (numbers[i] == 0) {
+                return pocketed[i];
+            }
+        }
+        return false;
+    }
+
+    int estimatedSize() {
+        return 40 + 4 * 16 + numbers.length * (4 + 8 + 8 + 1);
+    }
+}
@@ -0,0 +1,121 @@
+package pl.pdec.billiards.logic;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ShotOutcomeCache {
+    // rough per-entry overhead of the LinkedHashMap node
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private final long maxBytes;
+    private final double positionQuantum;
+    private final double angleQuantum;
+    private final double velocityQuantum;
+    private final LinkedHashMap<ShotKey, ShotOutcome> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    public ShotOutcomeCache(long maxBytes) {
+        this(maxBytes, 0.5, Math.toRadians(0.05), 0.5);
+    }
+
+    public ShotOutcomeCache(long maxBytes, double positionQuantum, double angleQuantum, double velocityQuantum) {
+        if (maxBytes <= 0) {
+            throw new RuntimeException("Cache size must be positive");
+        }
+        if (positionQuantum <= 0 || angleQuantum <= 0 || velocityQuantum <= 0) {
+            throw new RuntimeException("Quantization steps must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.positionQuantum = positionQuantum;
+        this.angleQuantum = angleQuantum;
+        this.velocityQuantum = velocityQuantum;
+    }
+
+    public double getPositionQuantum() {
+        return positionQuantum;
+    }
+
+    public double getAngleQuantum() {
+        return angleQuantum;
+    }
+
+    public double getVelocityQuantum() {
+        return velocityQuantum;
+    }
+
+    synchronized public ShotOutcome get(ShotKey key) {
+        ShotOutcome outcome = entries.get(key);
+        if (outcome == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return outcome;
+    }
+
+    synchronized public void put(ShotKey key, ShotOutcome outcome) {
+        long size = entrySize(key, outcome);
+        if (size > maxBytes) {
+            return;
+        }
+        ShotOutcome previous = entries.put(key, outcome);
+        if (previous != null) {
+            bytes -= entrySize(key, previous);
+        }
+        bytes += size;
+
+        Iterator<Map.Entry<ShotKey, ShotOutcome>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<ShotKey, ShotOutcome> eldest = it.next();
+            bytes -= entrySize(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    synchronized public void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized public int size() {
+        return entries.size();
+    }
+
+    synchronized public long getBytes() {
+        return bytes;
+    }
+
+    synchronized public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized public long getHits() {
+        return hits;
+    }
+
+    synchronized public long getMisses() {
+        return misses;
+    }
+
+    synchronized public long getEvictions() {
+        return evictions;
+    }
+
+    synchronized public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return String.format("ShotOutcomeCache{entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.3f}",
+                entries.size(), bytes, maxBytes, hits, misses, evictions, getHitRate());
+    }
+
+    private static long entrySize(ShotKey key, ShotOutcome outcome) {
+        return ENTRY_OVERHEAD + key.estimatedSize() + outcome.estimatedSize();
+    }
+}
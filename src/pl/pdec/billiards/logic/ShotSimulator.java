@@ -0,0 +1,118 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Table;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ShotSimulator {
+    private final Table table;
+    private final ShotOutcomeCache cache;
+    private final PhysicsParams params;
+    private final PhysicsEngineType engineType;
+    private final AdaptiveSubstepper substepper;
+    private final double deltaTime;
+    private final int maxTicks;
+
+    public ShotSimulator(Table table) {
+        this(table, null);
+    }
+
+    public ShotSimulator(Table table, ShotOutcomeCache cache) {
+        this(table, cache, 1 / 60.0, 60 * 60);
+    }
+
+    public ShotSimulator(Table table, ShotOutcomeCache cache, double deltaTime, int maxTicks) {
+        this(table, cache, deltaTime, maxTicks, PhysicsParams.DEFAULT);
+    }
+
+    public ShotSimulator(Table table, ShotOutcomeCache cache, double deltaTime, int maxTicks, PhysicsParams params) {
+        this(table, cache, deltaTime, maxTicks, params, PhysicsEngineType.MECHANIC);
+    }
+
+    // a cache must only be shared between simulators running with the same params and engine
+    public ShotSimulator(Table table, ShotOutcomeCache cache, double deltaTime, int maxTicks, PhysicsParams params,
+                         PhysicsEngineType engineType) {
+        this.table = table;
+        this.params = params;
+        this.engineType = engineType;
+        this.substepper = new AdaptiveSubstepper(params);
+        this.cache = cache;
+        this.deltaTime = deltaTime;
+        this.maxTicks = maxTicks;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (this.engineType == null) {
+            throw new RuntimeException("Engine type cannot be null");
+        }
+    }
+
+    public ShotOutcome simulate(Collection<Ball> balls, double directionX, double directionY, double velocity) {
+        ShotKey key = null;
+        if (cache != null) {
+            key = ShotKey.of(balls, directionX, directionY, velocity,
+                    cache.getPositionQuantum(), cache.getAngleQuantum(), cache.getVelocityQuantum());
+            ShotOutcome cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        List<Ball> copies = new ArrayList<>(balls.size());
+        Ball whiteBall = null;
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                Ball copy = ball.copy();
+                copies.add(copy);
+                if (copy.isWhite()) {
+                    whiteBall = copy;
+                }
+            }
+        }
+        if (whiteBall == null) {
+            throw new RuntimeException("White ball is not on the table");
+        }
+        whiteBall.setDirection(directionX, directionY);
+        whiteBall.setVelocity(velocity);
+
+        List<Ball> all = new ArrayList<>(copies);
+        int ticks = run(copies);
+        ShotOutcome outcome = new ShotOutcome(all, ticks);
+
+        if (cache != null) {
+            cache.put(key, outcome);
+        }
+        return outcome;
+    }
+
+    private int run(List<Ball> onTable) {
+        PhysicsEngine mechanic = engineType.create(table, onTable, false, params);
+        double t = 0;
+        int tick = 0;
+        while (tick < maxTicks && isMoving(onTable)) {
+            int substeps = substepper.substeps(onTable, deltaTime);
+            double substepTime = deltaTime / substeps;
+            for (int i = 0; i < substeps; i++) {
+                mechanic.integrate(t, substepTime);
+                onTable.removeIf(Ball::isInPocket);
+                t += substepTime;
+            }
+            tick++;
+        }
+        mechanic.shutdown();
+        return tick;
+    }
+
+    // a shot is over once every ball left on the table is at rest
+    public static boolean isMoving(Collection<Ball> balls) {
+        for (Ball ball : balls) {
+            if (!ball.isInPocket() && ball.getVelocity() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
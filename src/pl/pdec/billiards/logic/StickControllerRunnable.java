@@ -12,16 +12,25 @@ public class StickControllerRunnable implements Runnable, MouseListener {
     private final Container container;
     private final Stick stick;
     private final Ball whiteBall;
-    private final double baseVelocity = 10;
+    private final double baseVelocity;
 
     public StickControllerRunnable(Container container, Stick stick, Ball whiteBall) {
+        this(container, stick, whiteBall, PhysicsParams.DEFAULT);
+    }
+
+    public StickControllerRunnable(Container container, Stick stick, Ball whiteBall, PhysicsParams params) {
         this.container = container;
         this.stick = stick;
         this.whiteBall = whiteBall;
+        this.baseVelocity = params.getBaseVelocity();
 
         this.container.addMouseListener(this);
     }
 
+    public double getBaseVelocity() {
+        return baseVelocity;
+    }
+
     public void shutdown() {
         shutdown = true;
     }
@@ -0,0 +1,222 @@
+package pl.pdec.billiards.logic;
+
+import pl.pdec.billiards.DrawableInterface;
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Stick;
+import pl.pdec.billiards.components.Table;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class TrajectoryPreviewRunnable implements Runnable, DrawableInterface {
+    private static final int MAX_TICKS = 240;
+    private static final int CACHED_PREVIEWS = 64;
+    private static final Stroke STROKE = new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND,
+            1f, new float[]{6f, 4f}, 0f);
+
+    private final Table table;
+    private final Supplier<List<Ball>> balls;
+    private final Stick stick;
+    private final Ball whiteBall;
+    private final double baseVelocity;
+    private final AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+    private final double deltaTime = 1 / 60.0;
+    private final double angleThreshold = Math.toRadians(0.25);
+    private final double powerThreshold = 1;
+    private final Map<Long, Preview> previews = new LinkedHashMap<Long, Preview>(CACHED_PREVIEWS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Preview> eldest) {
+            return size() > CACHED_PREVIEWS;
+        }
+    };
+    private volatile Preview current = null;
+    private volatile boolean shutdown = false;
+    private double lastAngle = Double.NaN, lastPower = Double.NaN;
+    private ShotKey layoutKey = null;
+
+    // balls hands out a consistent copy of the balls on the table, the game keeps moving and removing its own
+    public TrajectoryPreviewRunnable(Table table, Supplier<List<Ball>> balls, Stick stick, Ball whiteBall,
+                                     double baseVelocity) {
+        this.table = table;
+        this.balls = balls;
+        this.stick = stick;
+        this.whiteBall = whiteBall;
+        this.baseVelocity = baseVelocity;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (this.balls == null) {
+            throw new RuntimeException("Balls supplier cannot be null");
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        current = null;
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            update();
+
+            try {
+                Thread.sleep(1000 / 60);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void update() {
+        if (stick == null || whiteBall == null || whiteBall.isInPocket()) {
+            current = null;
+            lastAngle = Double.NaN;
+            return;
+        }
+        List<Ball> balls = this.balls.get();
+        if (ShotSimulator.isMoving(balls)) {
+            current = null;
+            lastAngle = Double.NaN;
+            return;
+        }
+
+        ShotKey layout = ShotKey.of(balls, 1, 0, 0, 0.5, 1, 1);
+        if (!layout.equals(layoutKey)) {
+            layoutKey = layout;
+            previews.clear();
+            lastAngle = Double.NaN;
+        }
+
+        double angle = stick.getStrikeAngle();
+        double power = stick.getStrikePower();
+        if (!Double.isNaN(lastAngle)
+                && Math.abs(Math.IEEEremainder(angle - lastAngle, 2 * Math.PI)) < angleThreshold
+                && Math.abs(power - lastPower) < powerThreshold) {
+            return;
+        }
+        lastAngle = angle;
+        lastPower = power;
+
+        long key = (Math.round(angle / angleThreshold) << 32) ^ Math.round(power / powerThreshold);
+        Preview preview = previews.get(key);
+        if (preview == null) {
+            preview = compute(balls, angle, baseVelocity * power);
+            if (preview != null) {
+                previews.put(key, preview);
+            }
+        }
+        current = preview;
+    }
+
+    private Preview compute(List<Ball> balls, double angle, double velocity) {
+        List<Ball> onTable = new ArrayList<>(balls.size());
+        Ball white = null;
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                Ball copy = ball.copy();
+                onTable.add(copy);
+                if (copy.equals(whiteBall)) {
+                    white = copy;
+                }
+            }
+        }
+        if (white == null) {
+            return null;
+        }
+        white.setDirection(Math.cos(angle), Math.sin(angle));
+        white.setVelocity(velocity);
+
+        GameMechanic mechanic = new GameMechanic(table, onTable, false);
+        Path whitePath = new Path(white);
+        Path objectPath = null;
+        double t = 0;
+        for (int tick = 0; tick < MAX_TICKS && ShotSimulator.isMoving(onTable); tick++) {
+            int substeps = substepper.substeps(onTable, deltaTime);
+            double substepTime = deltaTime / substeps;
+            for (int i = 0; i < substeps; i++) {
+                mechanic.step(t, substepTime);
+                t += substepTime;
+            }
+
+            whitePath.add(white);
+            if (objectPath == null) {
+                for (Ball ball : onTable) {
+                    if (ball != white && ball.getVelocity() > 0) {
+                        objectPath = new Path(ball);
+                        break;
+                    }
+                }
+            } else {
+                objectPath.add(objectPath.ball);
+            }
+            onTable.removeIf(Ball::isInPocket);
+        }
+
+        return new Preview(whitePath, objectPath);
+    }
+
+    @Override
+    public void draw(Graphics g) {
+        Preview preview = current;
+        if (preview == null) {
+            return;
+        }
+
+        Graphics2D g2d = (Graphics2D) g;
+        Stroke stroke = g2d.getStroke();
+        g2d.setStroke(STROKE);
+        g2d.setColor(Color.WHITE);
+        g2d.drawPolyline(preview.whiteX, preview.whiteY, preview.whiteX.length);
+        if (preview.objectX != null) {
+            g2d.setColor(Color.DARK_GRAY);
+            g2d.drawPolyline(preview.objectX, preview.objectY, preview.objectX.length);
+        }
+        g2d.setStroke(stroke);
+    }
+
+    private static final class Path {
+        private final Ball ball;
+        private int[] x = new int[64];
+        private int[] y = new int[64];
+        private int size = 0;
+
+        private Path(Ball ball) {
+            this.ball = ball;
+            add(ball);
+        }
+
+        private void add(Ball ball) {
+            int px = (int) ball.getX();
+            int py = (int) ball.getY();
+            if (size > 0 && x[size - 1] == px && y[size - 1] == py) {
+                return;
+            }
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = px;
+            y[size] = py;
+            size++;
+        }
+    }
+
+    private static final class Preview {
+        private final int[] whiteX, whiteY;
+        private final int[] objectX, objectY;
+
+        private Preview(Path white, Path object) {
+            this.whiteX = Arrays.copyOf(white.x, white.size);
+            this.whiteY = Arrays.copyOf(white.y, white.size);
+            this.objectX = object == null ? null : Arrays.copyOf(object.x, object.size);
+            this.objectY = object == null ? null : Arrays.copyOf(object.y, object.size);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package pl.pdec.billiards.recording;
+
+import pl.pdec.billiards.DrawableInterface;
+import pl.pdec.billiards.components.Table;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class FrameRenderer {
+    private final int width, height;
+    private final double originX, originY;
+    private final BufferedImage background;
+    private final BlockingQueue<BufferedImage> pool;
+
+    // renders the area from originX, originY, width x height pixels, into at most poolSize images at a time
+    public FrameRenderer(Table table, double originX, double originY, int width, int height, int poolSize) {
+        if (table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (poolSize <= 0) {
+            throw new RuntimeException("Pool size must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.originX = originX;
+        this.originY = originY;
+
+        // the table never changes during a clip, so it is drawn once and copied under every frame
+        background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = begin(background);
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect((int) originX, (int) originY, width, height);
+        table.draw(g);
+        g.dispose();
+
+        pool = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+    }
+
+    public static FrameRenderer around(Table table, int margin, int poolSize) {
+        return new FrameRenderer(table, table.getX() - margin, table.getY() - margin,
+                (int) Math.ceil(table.getWidth()) + 2 * margin, (int) Math.ceil(table.getHeight()) + 2 * margin,
+                poolSize);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // blocks until an image is free, which bounds the memory held by frames in flight
+    public BufferedImage acquire() throws InterruptedException {
+        return pool.take();
+    }
+
+    public void release(BufferedImage image) {
+        pool.add(image);
+    }
+
+    public void render(BufferedImage target, Iterable<? extends DrawableInterface> items) {
+        Graphics2D g = (Graphics2D) target.getGraphics();
+        g.drawImage(background, 0, 0, null);
+        g.dispose();
+
+        g = begin(target);
+        for (DrawableInterface item : items) {
+            item.draw(g);
+        }
+        g.dispose();
+    }
+
+    private Graphics2D begin(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(-originX, -originY);
+        return g;
+    }
+}
@@ -0,0 +1,174 @@
+package pl.pdec.billiards.recording;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.BallState;
+import pl.pdec.billiards.logic.PhysicsParams;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// a shot as analytic motion segments: between events a ball follows the closed form of PhysicsParams.advance, so
+// the state at any time is evaluated directly instead of replayed tick by tick
+public class MotionTimeline {
+    // per segment: start time, x, y, direction x, direction y, velocity, then 1 when the ball is in a pocket
+    private static final int START = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int DIRECTION_X = 3;
+    private static final int DIRECTION_Y = 4;
+    private static final int VELOCITY = 5;
+    private static final int POCKETED = 6;
+    private static final int STRIDE = 7;
+
+    private final List<Ball> balls;
+    private final int[] numbers;
+    private final boolean[] white;
+    private final Color[] colors;
+    private final PhysicsParams params;
+    private final double tolerance;
+    private final double[][] segments;
+    private final int[] counts;
+    private final double[] scratch = new double[BallState.SIZE];
+    private final double[] predicted = new double[3];
+    private double duration = 0;
+
+    // watches the given balls from now on; observe() splits a segment wherever the simulation leaves it by more
+    // than the tolerance, so evaluate() stays within the tolerance of what was simulated
+    public MotionTimeline(Collection<Ball> balls, PhysicsParams params, double tolerance) {
+        this.balls = new ArrayList<>(balls);
+        this.params = params;
+        this.tolerance = tolerance;
+        if (tolerance <= 0) {
+            throw new RuntimeException("Tolerance must be positive");
+        }
+        int size = this.balls.size();
+        numbers = new int[size];
+        white = new boolean[size];
+        colors = new Color[size];
+        segments = new double[size][];
+        counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            Ball ball = this.balls.get(i);
+            numbers[i] = ball.getNumber();
+            white[i] = ball.isWhite();
+            colors[i] = ball.getColor();
+            segments[i] = new double[STRIDE * 4];
+            ball.getState().read(scratch);
+            startSegment(i, 0);
+        }
+    }
+
+    public int size() {
+        return numbers.length;
+    }
+
+    public int getNumber(int index) {
+        return numbers[index];
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public int getSegmentCount() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    // call after every integrate with the simulation time reached
+    public void observe(double t) {
+        for (int i = 0; i < numbers.length; i++) {
+            balls.get(i).getState().read(scratch);
+            int last = (counts[i] - 1) * STRIDE;
+            double[] track = segments[i];
+            if (track[last + POCKETED] != 0) {
+                continue;
+            }
+            boolean pocketed = scratch[BallState.IN_POCKET] != 0;
+            evaluateSegment(track, last, t, predicted);
+            double velocity = scratch[BallState.VELOCITY];
+            // a collision shows up as a new direction or a velocity jump long before the position drifts
+            boolean deflected = velocity > 0 && (scratch[BallState.DIRECTION_X] != track[last + DIRECTION_X]
+                    || scratch[BallState.DIRECTION_Y] != track[last + DIRECTION_Y]);
+            boolean jumped = Math.abs(velocity - predicted[2])
+                    > 0.05 * Math.max(velocity, predicted[2]) + params.getStopVelocity();
+            boolean drifted = Math.hypot(scratch[BallState.X] - predicted[0], scratch[BallState.Y] - predicted[1])
+                    > tolerance;
+            if (pocketed || deflected || jumped || drifted) {
+                startSegment(i, t);
+            }
+        }
+        duration = Math.max(duration, t);
+    }
+
+    // positions at time t into the balls, which must be in the order the timeline was built with; works the same
+    // forwards and backwards
+    public void evaluate(double t, List<Ball> target) {
+        if (target.size() != numbers.length) {
+            throw new RuntimeException("Timeline has " + numbers.length + " balls, got " + target.size());
+        }
+        for (int i = 0; i < numbers.length; i++) {
+            double[] track = segments[i];
+            int offset = find(track, counts[i], t) * STRIDE;
+            evaluateSegment(track, offset, t, predicted);
+            Ball ball = target.get(i);
+            ball.getState().set(predicted[0], predicted[1], track[offset + DIRECTION_X], track[offset + DIRECTION_Y],
+                    predicted[2], track[offset + POCKETED] != 0);
+        }
+    }
+
+    // balls with the same numbers, white flags and colours as the recorded ones, for drawing
+    public List<Ball> createBalls() {
+        List<Ball> created = new ArrayList<>(numbers.length);
+        for (int i = 0; i < numbers.length; i++) {
+            created.add(new Ball(numbers[i], white[i], colors[i], 0, 0));
+        }
+        evaluate(0, created);
+        return created;
+    }
+
+    private void startSegment(int index, double t) {
+        double[] track = segments[index];
+        int offset = counts[index] * STRIDE;
+        if (offset + STRIDE > track.length) {
+            track = segments[index] = Arrays.copyOf(track, track.length * 2);
+        }
+        track[offset + START] = t;
+        track[offset + X] = scratch[BallState.X];
+        track[offset + Y] = scratch[BallState.Y];
+        track[offset + DIRECTION_X] = scratch[BallState.DIRECTION_X];
+        track[offset + DIRECTION_Y] = scratch[BallState.DIRECTION_Y];
+        track[offset + VELOCITY] = scratch[BallState.IN_POCKET] != 0 ? 0 : scratch[BallState.VELOCITY];
+        track[offset + POCKETED] = scratch[BallState.IN_POCKET];
+        counts[index]++;
+    }
+
+    // last segment starting at or before t, the first one for earlier times
+    private static int find(double[] track, int count, double t) {
+        int low = 0, high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (track[middle * STRIDE + START] <= t) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // x, y and velocity
+    private void evaluateSegment(double[] track, int offset, double t, double[] target) {
+        target[0] = track[offset + X];
+        target[1] = track[offset + Y];
+        target[2] = track[offset + VELOCITY];
+        params.advance(target, track[offset + DIRECTION_X], track[offset + DIRECTION_Y],
+                Math.max(0, t - track[offset + START]));
+    }
+}
@@ -0,0 +1,112 @@
+package pl.pdec.billiards.recording;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// minimal PNG writer for TYPE_INT_RGB frames, one fixed filter and a fast deflate level; keep one per thread
+public class PngEncoder implements AutoCloseable {
+    private static final byte[] SIGNATURE = new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int FILTER_SUB = 1;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[13];
+    private byte[] raw = new byte[0];
+    private byte[] compressed = new byte[0];
+
+    public PngEncoder() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public PngEncoder(int level) {
+        deflater = new Deflater(level);
+    }
+
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new RuntimeException("Only TYPE_INT_RGB images can be encoded, got type " + image.getType());
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int stride = 1 + width * 3;
+        if (raw.length < stride * height) {
+            raw = new byte[stride * height];
+            compressed = new byte[stride * height + stride * height / 100 + 1024];
+        }
+        // the sub filter stores each byte as the difference to the pixel on its left, flat cloth becomes zeros
+        int r = 0;
+        for (int row = 0; row < height; row++) {
+            raw[r++] = FILTER_SUB;
+            int previous = 0;
+            for (int column = 0, p = row * width; column < width; column++, p++) {
+                int pixel = pixels[p];
+                raw[r++] = (byte) ((pixel >> 16) - (previous >> 16));
+                raw[r++] = (byte) ((pixel >> 8) - (previous >> 8));
+                raw[r++] = (byte) (pixel - previous);
+                previous = pixel;
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(raw, 0, r);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, length);
+                compressed = larger;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        out.write(SIGNATURE);
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = 2;  // truecolour
+        header[10] = 0; // deflate
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlace
+        chunk(out, "IHDR", header, header.length);
+        chunk(out, "IDAT", compressed, length);
+        chunk(out, "IEND", header, 0);
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private void chunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = new byte[]{(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2),
+                (byte) type.charAt(3)};
+        writeInt(out, length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,227 @@
+package pl.pdec.billiards.recording;
+
+import pl.pdec.billiards.components.Pockets;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.ShotOutcome;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// streaming aggregate of shot outcomes: where balls come to rest on a fixed grid over the table and which pocket
+// they drop into; memory depends on the grid and the thread count only, never on the number of shots
+public class PocketHeatmap implements AutoCloseable {
+    // shared counter layout: shots, balls at rest, balls off the table, then per pocket the object balls and the
+    // white, then the rest grid row by row
+    private static final int SHOTS = 0;
+    private static final int RESTING = 1;
+    private static final int OFF_TABLE = 2;
+    private static final int POCKETS = 3;
+
+    private final Table table;
+    private final int columns, rows;
+    private final int pocketCount;
+    private final int gridOffset;
+    private final AtomicLongArray counters;
+    private ScheduledExecutorService flusher;
+    private Path file;
+
+    public PocketHeatmap(Table table, int columns, int rows) {
+        this.table = table;
+        this.columns = columns;
+        this.rows = rows;
+        if (this.table == null) {
+            throw new RuntimeException("Table object cannot be null");
+        }
+        if (columns < 1 || rows < 1) {
+            throw new RuntimeException("Heatmap grid needs at least one cell");
+        }
+        this.pocketCount = table.getPockets().size();
+        this.gridOffset = POCKETS + pocketCount * 2;
+        this.counters = new AtomicLongArray(gridOffset + columns * rows);
+    }
+
+    // one per thread; it merges itself into the shared counters every mergeEvery shots
+    public Partial partial(int mergeEvery) {
+        return new Partial(mergeEvery);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getShots() {
+        return counters.get(SHOTS);
+    }
+
+    public long getResting() {
+        return counters.get(RESTING);
+    }
+
+    public long getOffTable() {
+        return counters.get(OFF_TABLE);
+    }
+
+    public long getPocketed(int pocket) {
+        return counters.get(POCKETS + pocket * 2);
+    }
+
+    public long getWhitePocketed(int pocket) {
+        return counters.get(POCKETS + pocket * 2 + 1);
+    }
+
+    public long getRestCount(int column, int row) {
+        return counters.get(gridOffset + row * columns + column);
+    }
+
+    // rewrites the file every interval from a daemon thread, close() writes the final state
+    public synchronized void startFlushing(Path file, long interval, TimeUnit unit) {
+        if (flusher != null) {
+            throw new RuntimeException("Heatmap is already flushing to " + this.file);
+        }
+        this.file = file;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heatmap-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush(file);
+            } catch (IOException e) {
+                System.err.println("Heatmap flush to " + file + " failed: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+    }
+
+    // partials merge cell by cell, so a flush taken while shots run can be off by the merges in progress; the
+    // file is replaced atomically, readers never see half of it
+    public synchronized void flush(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))) {
+            write(writer);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void write(Writer writer) throws IOException {
+        Pockets pockets = table.getPockets();
+        writer.write(String.format(Locale.ROOT, "table %.1f %.1f %.1f %.1f%n",
+                table.getX(), table.getY(), table.getWidth(), table.getHeight()));
+        writer.write(String.format(Locale.ROOT, "shots %d%nresting %d%noff-table %d%n",
+                getShots(), getResting(), getOffTable()));
+        for (int i = 0; i < pocketCount; i++) {
+            writer.write(String.format(Locale.ROOT, "pocket %d %.1f %.1f %d %d%n",
+                    i, pockets.getX(i), pockets.getY(i), getPocketed(i), getWhitePocketed(i)));
+        }
+        writer.write("grid " + columns + " " + rows + System.lineSeparator());
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            for (int column = 0; column < columns; column++) {
+                if (column > 0) {
+                    line.append(' ');
+                }
+                line.append(getRestCount(column, row));
+            }
+            writer.write(line.append(System.lineSeparator()).toString());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = flusher;
+            flusher = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+            try {
+                running.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush(file);
+        }
+    }
+
+    // plain counters owned by one thread; only merge() touches the shared ones
+    public final class Partial {
+        private final long[] counts = new long[counters.length()];
+        private final int mergeEvery;
+        private int unmerged = 0;
+
+        private Partial(int mergeEvery) {
+            this.mergeEvery = Math.max(1, mergeEvery);
+        }
+
+        public void add(ShotOutcome outcome) {
+            Pockets pockets = table.getPockets();
+            counts[SHOTS]++;
+            for (int i = 0; i < outcome.size(); i++) {
+                double x = outcome.getX(i);
+                double y = outcome.getY(i);
+                if (outcome.isPocketed(i)) {
+                    int pocket = nearestPocket(pockets, x, y);
+                    counts[POCKETS + pocket * 2 + (outcome.getNumber(i) == 0 ? 1 : 0)]++;
+                    continue;
+                }
+                int column = (int) Math.floor((x - table.getX()) / table.getWidth() * columns);
+                int row = (int) Math.floor((y - table.getY()) / table.getHeight() * rows);
+                if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                    counts[OFF_TABLE]++;
+                } else {
+                    counts[RESTING]++;
+                    counts[gridOffset + row * columns + column]++;
+                }
+            }
+            if (++unmerged >= mergeEvery) {
+                merge();
+            }
+        }
+
+        public void merge() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    counters.getAndAdd(i, counts[i]);
+                    counts[i] = 0;
+                }
+            }
+            unmerged = 0;
+        }
+    }
+
+    // a pocketed ball stays where it crossed into the pocket, so the closest centre is the pocket it went into
+    private static int nearestPocket(Pockets pockets, double x, double y) {
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < pockets.size(); i++) {
+            double dx = x - pockets.getX(i);
+            double dy = y - pockets.getY(i);
+            double distance = dx * dx + dy * dy;
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,196 @@
+package pl.pdec.billiards.recording;
+
+import pl.pdec.billiards.logic.PhysicsParams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TrajectoryReader implements AutoCloseable {
+    private final InputStream in;
+    private final TrajectoryWriter.Mode mode;
+    private final double quantum;
+    private final PhysicsParams params;
+    private final byte[] buffer = new byte[8192];
+    private int position = 0, limit = 0;
+
+    private final int[] numbers;
+    private final long[] quantizedX, quantizedY;
+    private final double[] x, y, directionX, directionY, velocity;
+    private final boolean[] pocketed;
+    private final double[] scratch = new double[3];
+    private double time = 0;
+    private long frames = 0;
+    private boolean ended = false;
+
+    public TrajectoryReader(InputStream in) throws IOException {
+        this.in = in;
+        if (readInt() != TrajectoryWriter.MAGIC) {
+            throw new IOException("Not a trajectory stream");
+        }
+        int version = readByte();
+        if (version != TrajectoryWriter.VERSION) {
+            throw new IOException("Unsupported trajectory version " + version);
+        }
+        mode = TrajectoryWriter.Mode.values()[readByte()];
+        quantum = Double.longBitsToDouble(readLong());
+        double friction = Double.longBitsToDouble(readLong());
+        double stopVelocity = Double.longBitsToDouble(readLong());
+        params = PhysicsParams.DEFAULT.withFriction(friction).withStopVelocity(stopVelocity);
+
+        int size = (int) readVarLong();
+        numbers = new int[size];
+        quantizedX = new long[size];
+        quantizedY = new long[size];
+        x = new double[size];
+        y = new double[size];
+        directionX = new double[size];
+        directionY = new double[size];
+        velocity = new double[size];
+        pocketed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            numbers[i] = (int) readVarLong();
+            readKeyframe(i);
+        }
+    }
+
+    public TrajectoryWriter.Mode getMode() {
+        return mode;
+    }
+
+    public int size() {
+        return numbers.length;
+    }
+
+    public int getNumber(int index) {
+        return numbers[index];
+    }
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public double getY(int index) {
+        return y[index];
+    }
+
+    public boolean isInPocket(int index) {
+        return pocketed[index];
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public boolean nextFrame() throws IOException {
+        if (ended) {
+            return false;
+        }
+        int tag = readByte();
+        if (tag == TrajectoryWriter.END) {
+            ended = true;
+            return false;
+        }
+        if (tag != TrajectoryWriter.FRAME) {
+            throw new IOException("Corrupted trajectory stream, unexpected tag " + tag);
+        }
+
+        double deltaTime = readVarLong() / 1e6;
+        time += deltaTime;
+        frames++;
+        if (mode == TrajectoryWriter.Mode.KEYFRAME) {
+            for (int i = 0; i < numbers.length; i++) {
+                if (!pocketed[i]) {
+                    scratch[0] = x[i];
+                    scratch[1] = y[i];
+                    scratch[2] = velocity[i];
+                    params.advance(scratch, directionX[i], directionY[i], deltaTime);
+                    x[i] = scratch[0];
+                    y[i] = scratch[1];
+                    velocity[i] = scratch[2];
+                }
+            }
+        }
+
+        long count = readVarLong();
+        int i = -1;
+        for (long k = 0; k < count; k++) {
+            long header = readVarLong();
+            i += (int) (header >>> 1);
+            if ((header & 1) != 0) {
+                pocketed[i] = true;
+                velocity[i] = 0;
+            } else if (mode == TrajectoryWriter.Mode.DELTA) {
+                quantizedX[i] += unZigZag(readVarLong());
+                quantizedY[i] += unZigZag(readVarLong());
+                x[i] = quantizedX[i] * quantum;
+                y[i] = quantizedY[i] * quantum;
+            } else {
+                readKeyframe(i);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readKeyframe(int i) throws IOException {
+        quantizedX[i] += unZigZag(readVarLong());
+        quantizedY[i] += unZigZag(readVarLong());
+        x[i] = quantizedX[i] * quantum;
+        y[i] = quantizedY[i] * quantum;
+        if (mode == TrajectoryWriter.Mode.KEYFRAME) {
+            long angle = readVarLong();
+            directionX[i] = Math.cos(angle * 2 * Math.PI / TrajectoryWriter.ANGLE_STEPS);
+            directionY[i] = Math.sin(angle * 2 * Math.PI / TrajectoryWriter.ANGLE_STEPS);
+            velocity[i] = readVarLong() * TrajectoryWriter.VELOCITY_QUANTUM;
+        }
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("Trajectory stream ended without an end marker");
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private long readLong() throws IOException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,224 @@
+package pl.pdec.billiards.recording;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.logic.PhysicsParams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class TrajectoryWriter implements AutoCloseable {
+    static final int MAGIC = 0x42545246;
+    static final int VERSION = 1;
+    static final int FRAME = 1;
+    static final int END = 0;
+    static final int ANGLE_STEPS = 1 << 16;
+    static final double VELOCITY_QUANTUM = 1 / 16.0;
+
+    public enum Mode {
+        // every moving ball, every frame, as quantized position deltas
+        DELTA,
+        // only the frames where a ball leaves its analytic path, e.g. after a collision
+        KEYFRAME
+    }
+
+    private final OutputStream out;
+    private final List<Ball> balls;
+    private final Mode mode;
+    private final double quantum;
+    private final double tolerance;
+    private final PhysicsParams params;
+    private final byte[] buffer = new byte[8192];
+    private int position = 0;
+
+    // what the reader will have reconstructed so far, kept in step with it
+    private final long[] quantizedX, quantizedY;
+    private final double[] x, y, directionX, directionY, velocity;
+    private final boolean[] pocketed;
+    private final int[] changed;
+    private final double[] scratch = new double[3];
+
+    // keyframes are predicted with the friction and stop velocity of params, which must be the ones the balls are
+    // simulated with
+    public TrajectoryWriter(OutputStream out, Collection<Ball> balls, Mode mode, double quantum, double tolerance,
+                            PhysicsParams params) throws IOException {
+        if (quantum <= 0 || tolerance < quantum) {
+            throw new RuntimeException("Quantum must be positive and not larger than the tolerance");
+        }
+        if (params == null) {
+            throw new RuntimeException("Physics params cannot be null");
+        }
+        this.out = out;
+        this.balls = new ArrayList<>(balls);
+        this.mode = mode;
+        this.quantum = quantum;
+        this.tolerance = tolerance;
+        this.params = params;
+
+        int size = this.balls.size();
+        quantizedX = new long[size];
+        quantizedY = new long[size];
+        x = new double[size];
+        y = new double[size];
+        directionX = new double[size];
+        directionY = new double[size];
+        velocity = new double[size];
+        pocketed = new boolean[size];
+        changed = new int[size];
+
+        writeInt(MAGIC);
+        writeByte(VERSION);
+        writeByte(mode.ordinal());
+        writeLong(Double.doubleToLongBits(quantum));
+        // keyframes are predicted with these, the reader takes them from here rather than assuming them
+        writeLong(Double.doubleToLongBits(params.getFriction()));
+        writeLong(Double.doubleToLongBits(params.getStopVelocity()));
+        writeVarLong(size);
+        for (int i = 0; i < size; i++) {
+            Ball ball = this.balls.get(i);
+            writeVarLong(ball.getNumber());
+            writeKeyframe(i, ball);
+        }
+    }
+
+    public TrajectoryWriter(OutputStream out, Collection<Ball> balls, Mode mode, double quantum, double tolerance)
+            throws IOException {
+        this(out, balls, mode, quantum, tolerance, PhysicsParams.DEFAULT);
+    }
+
+    public TrajectoryWriter(OutputStream out, Collection<Ball> balls, Mode mode) throws IOException {
+        this(out, balls, mode, 1 / 16.0, 0.5);
+    }
+
+    public void writeFrame(double deltaTime) throws IOException {
+        // the reader only sees whole microseconds, the prediction has to advance by exactly what it will
+        long micros = Math.round(deltaTime * 1e6);
+        double frameTime = micros / 1e6;
+        int count = 0;
+        for (int i = 0; i < balls.size(); i++) {
+            if (pocketed[i]) {
+                continue;
+            }
+            Ball ball = balls.get(i);
+            if (mode == Mode.DELTA) {
+                if (ball.isInPocket() || Math.round(ball.getX() / quantum) != quantizedX[i]
+                        || Math.round(ball.getY() / quantum) != quantizedY[i]) {
+                    changed[count++] = i;
+                }
+            } else {
+                predict(i, frameTime);
+                double dx = ball.getX() - x[i];
+                double dy = ball.getY() - y[i];
+                if (ball.isInPocket() || dx * dx + dy * dy > tolerance * tolerance
+                        || (ball.getVelocity() == 0) != (velocity[i] == 0)) {
+                    changed[count++] = i;
+                }
+            }
+        }
+
+        writeByte(FRAME);
+        writeVarLong(micros);
+        writeVarLong(count);
+        int previous = -1;
+        for (int k = 0; k < count; k++) {
+            int i = changed[k];
+            Ball ball = balls.get(i);
+            boolean inPocket = ball.isInPocket();
+            writeVarLong(((long) (i - previous) << 1) | (inPocket ? 1 : 0));
+            previous = i;
+            if (inPocket) {
+                pocketed[i] = true;
+            } else if (mode == Mode.DELTA) {
+                long qx = Math.round(ball.getX() / quantum);
+                long qy = Math.round(ball.getY() / quantum);
+                writeVarLong(zigZag(qx - quantizedX[i]));
+                writeVarLong(zigZag(qy - quantizedY[i]));
+                quantizedX[i] = qx;
+                quantizedY[i] = qy;
+            } else {
+                writeKeyframe(i, ball);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeByte(END);
+        flush();
+        out.close();
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void writeKeyframe(int i, Ball ball) throws IOException {
+        long qx = Math.round(ball.getX() / quantum);
+        long qy = Math.round(ball.getY() / quantum);
+        writeVarLong(zigZag(qx - quantizedX[i]));
+        writeVarLong(zigZag(qy - quantizedY[i]));
+        quantizedX[i] = qx;
+        quantizedY[i] = qy;
+        x[i] = qx * quantum;
+        y[i] = qy * quantum;
+        if (mode == Mode.KEYFRAME) {
+            int angle = quantizeAngle(ball.getDirectionX(), ball.getDirectionY());
+            long quantizedVelocity = Math.round(ball.getVelocity() / VELOCITY_QUANTUM);
+            writeVarLong(angle);
+            writeVarLong(quantizedVelocity);
+            directionX[i] = Math.cos(angle * 2 * Math.PI / ANGLE_STEPS);
+            directionY[i] = Math.sin(angle * 2 * Math.PI / ANGLE_STEPS);
+            velocity[i] = quantizedVelocity * VELOCITY_QUANTUM;
+        }
+    }
+
+    private void predict(int i, double deltaTime) {
+        scratch[0] = x[i];
+        scratch[1] = y[i];
+        scratch[2] = velocity[i];
+        params.advance(scratch, directionX[i], directionY[i], deltaTime);
+        x[i] = scratch[0];
+        y[i] = scratch[1];
+        velocity[i] = scratch[2];
+    }
+
+    static int quantizeAngle(double directionX, double directionY) {
+        double angle = Math.atan2(directionY, directionX);
+        return (int) (Math.round(angle / (2 * Math.PI) * ANGLE_STEPS) & (ANGLE_STEPS - 1));
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) throws IOException {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+}
@@ -0,0 +1,239 @@
+package pl.pdec.billiards.tools;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.components.TableSnapshot;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// fails when the tick loop allocates more per tick, or triggers more collections, than the engine's budget. The
+// measurement runs in a JVM without escape analysis, where a headless run counts the same bytes every time, and the
+// least of several windows is taken for the threaded runs, which vary with the scheduling. The headless budgets sit
+// a little above what JDK 17 measures today, below one more array per moving ball per tick
+public class AllocationGate {
+    private static final double FRAME_TIME = 1 / 60.0;
+    // a fixed heap, so the number of collections does not depend on the machine's memory
+    private static final String HEAP = "256m";
+    private static final Map<PhysicsEngineType, Long> BYTES_PER_TICK = new EnumMap<>(PhysicsEngineType.class);
+    private static final Map<PhysicsEngineType, Long> THREADED_BYTES_PER_TICK = new EnumMap<>(PhysicsEngineType.class);
+    private static final Map<PhysicsEngineType, Integer> COLLECTIONS = new EnumMap<>(PhysicsEngineType.class);
+
+    static {
+        BYTES_PER_TICK.put(PhysicsEngineType.MECHANIC, 8064L);
+        BYTES_PER_TICK.put(PhysicsEngineType.MATH, 512L);
+        BYTES_PER_TICK.put(PhysicsEngineType.OFF_HEAP, 128L);
+        // the threaded mechanic resolves contacts in the order its workers get to them, so every run simulates a
+        // slightly different break and only a larger regression shows above the spread
+        THREADED_BYTES_PER_TICK.put(PhysicsEngineType.MECHANIC, 7936L);
+        THREADED_BYTES_PER_TICK.put(PhysicsEngineType.MATH, 1040L);
+        // collections per window on the fixed heap
+        COLLECTIONS.put(PhysicsEngineType.MECHANIC, 5);
+        COLLECTIONS.put(PhysicsEngineType.MATH, 1);
+        COLLECTIONS.put(PhysicsEngineType.OFF_HEAP, 1);
+    }
+
+    public static void main(String... args) throws InterruptedException, IOException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        if (!options.containsKey("measure")) {
+            System.exit(measureInChild(args));
+        }
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "20000"));
+        int warmupTicks = Integer.parseInt(options.getOrDefault("warmup-ticks", "20000"));
+        int windows = Integer.parseInt(options.getOrDefault("windows", "5"));
+        String maxGc = options.get("max-gc");
+        boolean threaded = Boolean.parseBoolean(options.getOrDefault("threaded", "false"));
+        String only = options.get("engine");
+        String maxBytes = options.get("max-bytes-per-tick");
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            throw new RuntimeException("This JVM does not report per-thread allocations");
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        GcCounter collections = new GcCounter();
+
+        System.out.printf("%-9s %-8s %8s %12s %12s %6s %10s  %s%n",
+                "engine", "mode", "ticks", "bytes/tick", "limit", "gcs", "pause[ms]", "result");
+        boolean passed = true;
+        for (PhysicsEngineType engine : PhysicsEngineType.values()) {
+            if (only != null && !engine.name().equalsIgnoreCase(only)) {
+                continue;
+            }
+            boolean engineThreaded = threaded && engine.isThreadable();
+            Scenario scenario = new Scenario(engine, engineThreaded);
+            scenario.run(warmupTicks);
+
+            long limit = maxBytes != null ? Long.parseLong(maxBytes)
+                    : (engineThreaded ? THREADED_BYTES_PER_TICK : BYTES_PER_TICK).get(engine);
+            int maxCollections = maxGc != null ? Integer.parseInt(maxGc) : COLLECTIONS.get(engine);
+            // the worker threads of a threaded engine allocate too, so every live thread is counted
+            long[] ids = engineThreaded ? threads.getAllThreadIds() : new long[]{Thread.currentThread().getId()};
+            long bytes = Long.MAX_VALUE, gcs = 0, pause = 0;
+            for (int w = 0; w < windows; w++) {
+                long bytesBefore = sum(allocations.getThreadAllocatedBytes(ids));
+                long collectionsBefore = collections.count.get();
+                long pauseBefore = collections.pauseMillis.get();
+                scenario.run(ticks);
+                bytes = Math.min(bytes, sum(allocations.getThreadAllocatedBytes(ids)) - bytesBefore);
+                collections.drain();
+                gcs = Math.max(gcs, collections.count.get() - collectionsBefore);
+                pause = Math.max(pause, collections.pauseMillis.get() - pauseBefore);
+            }
+            scenario.shutdown();
+
+            double perTick = bytes / (double) ticks;
+            boolean ok = perTick <= limit && gcs <= maxCollections;
+            passed &= ok;
+            System.out.printf(Locale.ROOT, "%-9s %-8s %8d %12.1f %12d %6d %10d  %s%n",
+                    engine.name().toLowerCase(Locale.ROOT), engineThreaded ? "threaded" : "headless", ticks,
+                    perTick, limit, gcs, pause, ok ? "ok" : "FAIL");
+        }
+        collections.close();
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // measures in a JVM without escape analysis, so every allocation the code asks for is counted on every run and
+    // the budgets can sit just above the baseline; returns the child's exit code
+    private static int measureInChild(String... args) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-XX:-DoEscapeAnalysis");
+        command.add("-Xmx" + HEAP);
+        command.add("-Xms" + HEAP);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AllocationGate.class.getName());
+        command.addAll(Arrays.asList(args));
+        command.add("--measure");
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            if (value > 0) {
+                total += value;
+            }
+        }
+        return total;
+    }
+
+    // a 9-ball break played out again and again; the rack is restored from a snapshot, which allocates nothing,
+    // so every byte counted comes from the engine and the substepper
+    private static final class Scenario {
+        private final List<Ball> balls;
+        private final TableSnapshot rack;
+        private final PhysicsEngine engine;
+        private final AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        private final Ball white;
+        private double t = 0;
+
+        private Scenario(PhysicsEngineType type, boolean threaded) {
+            Table table = new Table(0, 0, 450, 600);
+            balls = new ArrayList<>(Racks.nineBall(table));
+            Racks.aimBreak(balls, 0, 3000);
+            white = Racks.white(balls);
+            rack = TableSnapshot.of(table, balls);
+            engine = type.create(table, balls, threaded);
+        }
+
+        private void run(int ticks) {
+            for (int tick = 0; tick < ticks; tick++) {
+                if (white.isInPocket() || !ShotSimulator.isMoving(balls)) {
+                    rack.restore(balls);
+                }
+                int substeps = substepper.substeps(balls, FRAME_TIME);
+                double substepTime = FRAME_TIME / substeps;
+                for (int i = 0; i < substeps; i++) {
+                    engine.integrate(t, substepTime);
+                    t += substepTime;
+                }
+            }
+        }
+
+        private void shutdown() {
+            engine.shutdown();
+        }
+    }
+
+    // counts collections of every collector through the notifications the JVM sends after each one
+    private static final class GcCounter implements AutoCloseable {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong pauseMillis = new AtomicLong();
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        private final long initial;
+        private final NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                count.incrementAndGet();
+                pauseMillis.addAndGet(info.getGcInfo().getDuration());
+            }
+        };
+
+        private GcCounter() {
+            for (GarbageCollectorMXBean collector : collectors) {
+                if (collector instanceof NotificationEmitter) {
+                    NotificationEmitter emitter = (NotificationEmitter) collector;
+                    emitter.addNotificationListener(listener, null, null);
+                    emitters.add(emitter);
+                }
+            }
+            initial = collections();
+        }
+
+        // notifications arrive on their own thread after the collection, wait until every collection the beans
+        // have counted since the listener was added has been delivered
+        private void drain() throws InterruptedException {
+            long deadline = System.nanoTime() + 1_000_000_000L;
+            while (count.get() < collections() - initial && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+
+        private long collections() {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : collectors) {
+                total += Math.max(0, collector.getCollectionCount());
+            }
+            return total;
+        }
+
+        @Override
+        public void close() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(listener);
+                } catch (javax.management.ListenerNotFoundException e) {
+                    // already gone
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.BallState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BallStateBenchmark {
+
+    public static void main(String... args) throws InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        int readers = Integer.parseInt(options.getOrDefault("readers", "8"));
+        int writers = Integer.parseInt(options.getOrDefault("writers", "2"));
+        int balls = Integer.parseInt(options.getOrDefault("balls", "16"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "2"));
+
+        System.out.printf("%-13s %7s %7s %14s %14s %12s%n",
+                "state", "readers", "writers", "reads/s", "writes/s", "torn reads");
+        // the first round of each only warms the JIT up
+        for (int round = 0; round < 2; round++) {
+            run(new MonitorStates(balls), readers, writers, round == 0 ? 0.5 : seconds, round > 0);
+            run(new SeqlockStates(balls), readers, writers, round == 0 ? 0.5 : seconds, round > 0);
+        }
+    }
+
+    // writers store a tuple where every field derives from one counter, readers check that what they read
+    // belongs to a single tuple
+    private static void run(States states, int readers, int writers, double seconds, boolean print)
+            throws InterruptedException {
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        AtomicLong torn = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] stop = new long[1];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                await(start);
+                long count = 0;
+                double value = writer;
+                while (System.nanoTime() < stop[0]) {
+                    for (int i = 0; i < states.size(); i++) {
+                        states.write(i, value);
+                    }
+                    value += writers;
+                    count += states.size();
+                }
+                writes.addAndGet(count);
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                double[] values = new double[BallState.SIZE];
+                long count = 0, inconsistent = 0;
+                while (System.nanoTime() < stop[0]) {
+                    for (int i = 0; i < states.size(); i++) {
+                        states.read(i, values);
+                        double v = values[BallState.X];
+                        if (values[BallState.Y] != -v || values[BallState.DIRECTION_X] != v + 1
+                                || values[BallState.DIRECTION_Y] != v + 2 || values[BallState.VELOCITY] != v + 3) {
+                            inconsistent++;
+                        }
+                    }
+                    count += states.size();
+                }
+                reads.addAndGet(count);
+                torn.addAndGet(inconsistent);
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        stop[0] = begin + (long) (seconds * 1e9);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        if (print) {
+            System.out.printf(Locale.ROOT, "%-13s %7d %7d %14.0f %14.0f %12d%n", states.name(), readers, writers,
+                    reads.get() / elapsed, writes.get() / elapsed, torn.get());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface States {
+        String name();
+
+        int size();
+
+        void write(int index, double value);
+
+        void read(int index, double[] values);
+    }
+
+    // the accessors Ball used to have: one monitor per field group and a direction array swapped by reference
+    private static final class MonitorStates implements States {
+        private final MonitorState[] states;
+
+        private MonitorStates(int size) {
+            states = new MonitorState[size];
+            for (int i = 0; i < size; i++) {
+                states[i] = new MonitorState();
+                write(i, 0);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "synchronized";
+        }
+
+        @Override
+        public int size() {
+            return states.length;
+        }
+
+        @Override
+        public void write(int index, double value) {
+            MonitorState state = states[index];
+            state.setPosition(value, -value);
+            state.directionVector = new double[]{value + 1, value + 2};
+            state.setVelocity(value + 3);
+        }
+
+        @Override
+        public void read(int index, double[] values) {
+            MonitorState state = states[index];
+            values[BallState.X] = state.getX();
+            values[BallState.Y] = state.getY();
+            double[] direction = state.directionVector;
+            values[BallState.DIRECTION_X] = direction[0];
+            values[BallState.DIRECTION_Y] = direction[1];
+            values[BallState.VELOCITY] = state.getVelocity();
+        }
+    }
+
+    private static final class MonitorState {
+        private double x, y;
+        private volatile double velocity;
+        private double[] directionVector = new double[2];
+
+        synchronized void setPosition(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        synchronized double getX() {
+            return x;
+        }
+
+        synchronized double getY() {
+            return y;
+        }
+
+        synchronized void setVelocity(double velocity) {
+            this.velocity = velocity;
+        }
+
+        synchronized double getVelocity() {
+            return velocity;
+        }
+    }
+
+    private static final class SeqlockStates implements States {
+        private final BallState[] states;
+
+        private SeqlockStates(int size) {
+            states = new BallState[size];
+            for (int i = 0; i < size; i++) {
+                states[i] = new BallState(0, 0);
+                write(i, 0);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "seqlock";
+        }
+
+        @Override
+        public int size() {
+            return states.length;
+        }
+
+        @Override
+        public void write(int index, double value) {
+            states[index].set(value, -value, value + 1, value + 2, value + 3, false);
+        }
+
+        @Override
+        public void read(int index, double[] values) {
+            states[index].read(values);
+        }
+    }
+}
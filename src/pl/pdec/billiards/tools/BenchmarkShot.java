@@ -0,0 +1,40 @@
+package pl.pdec.billiards.tools;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// the shots the engine comparison and the parameter sweep play on a 9-ball rack, so their results line up
+public final class BenchmarkShot {
+    public static final List<BenchmarkShot> ALL = Collections.unmodifiableList(Arrays.asList(
+            new BenchmarkShot("break", 0.0, 300.0),
+            new BenchmarkShot("break-left", -1.5, 300.0),
+            new BenchmarkShot("break-right", 1.5, 300.0),
+            new BenchmarkShot("soft", 0.0, 80.0),
+            new BenchmarkShot("cut", 8.0, 200.0),
+            new BenchmarkShot("bank", -35.0, 200.0)));
+
+    private final String name;
+    private final double aimOffset;
+    private final double power;
+
+    private BenchmarkShot(String name, double aimOffset, double power) {
+        this.name = name;
+        this.aimOffset = aimOffset;
+        this.power = power;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // degrees from the line between the white and the lead ball
+    public double getAimOffset() {
+        return aimOffset;
+    }
+
+    // stick power, the white starts at the base velocity times this
+    public double getPower() {
+        return power;
+    }
+}
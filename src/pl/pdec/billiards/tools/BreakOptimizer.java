@@ -0,0 +1,175 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotOutcome;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class BreakOptimizer {
+    // search dimensions: white x as a fraction of the table width, aim offset in degrees, stick power
+    private static final double[] LOWER = new double[]{0.1, -10, 50};
+    private static final double[] UPPER = new double[]{0.9, 10, 400};
+    private static final double WHITE_POCKETED_PENALTY = 1;
+
+    public static void main(String... args) throws InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        double width = Double.parseDouble(options.getOrDefault("width", "450"));
+        double height = Double.parseDouble(options.getOrDefault("height", "600"));
+        double budgetSeconds = Double.parseDouble(options.getOrDefault("budget", "30"));
+        int samples = Integer.parseInt(options.getOrDefault("samples", "64"));
+        int repeats = Integer.parseInt(options.getOrDefault("repeats", "8"));
+        double eliteFraction = Double.parseDouble(options.getOrDefault("elite", "0.2"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        BreakOptimizer optimizer = new BreakOptimizer(width, height, repeats, PhysicsParams.DEFAULT);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            optimizer.optimize(executor, samples, eliteFraction, budgetSeconds, new Random(seed));
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private final double width, height;
+    private final int repeats;
+    private final PhysicsParams params;
+
+    public BreakOptimizer(double width, double height, int repeats, PhysicsParams params) {
+        this.width = width;
+        this.height = height;
+        this.repeats = repeats;
+        this.params = params;
+    }
+
+    public double[] optimize(ExecutorService executor, int samples, double eliteFraction, double budgetSeconds,
+                             Random random) throws InterruptedException {
+        long deadline = System.nanoTime() + (long) (budgetSeconds * 1e9);
+        int elite = Math.max(2, (int) (samples * eliteFraction));
+        double[] mean = new double[LOWER.length];
+        double[] deviation = new double[LOWER.length];
+        for (int d = 0; d < mean.length; d++) {
+            mean[d] = (LOWER[d] + UPPER[d]) / 2;
+            deviation[d] = (UPPER[d] - LOWER[d]) / 4;
+        }
+
+        double[] best = mean.clone();
+        double bestScore = Double.NEGATIVE_INFINITY;
+        System.out.printf(Locale.ROOT, "%4s %8s %8s %8s %8s %8s %8s %8s %8s%n",
+                "iter", "best", "elite", "x", "angle", "power", "sd(x)", "sd(ang)", "sd(pow)");
+        // the first iteration always runs to the end, so there is a scored candidate to report however small the
+        // budget
+        for (int iteration = 1; iteration == 1 || System.nanoTime() < deadline; iteration++) {
+            double[][] candidates = new double[samples][];
+            List<Future<Double>> scores = new ArrayList<>(samples);
+            for (int s = 0; s < samples; s++) {
+                double[] candidate = new double[mean.length];
+                for (int d = 0; d < mean.length; d++) {
+                    candidate[d] = clamp(mean[d] + deviation[d] * random.nextGaussian(), LOWER[d], UPPER[d]);
+                }
+                candidates[s] = candidate;
+                long evaluationSeed = random.nextLong();
+                scores.add(executor.submit((Callable<Double>) () -> evaluate(candidate, evaluationSeed)));
+            }
+
+            Integer[] order = new Integer[samples];
+            double[] values = new double[samples];
+            try {
+                for (int s = 0; s < samples; s++) {
+                    if (iteration == 1) {
+                        values[s] = scores.get(s).get();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        values[s] = scores.get(s).get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                    }
+                    order[s] = s;
+                }
+            } catch (TimeoutException e) {
+                // the wall-clock budget ran out in the middle of an iteration, keep the last complete one
+                for (Future<Double> score : scores) {
+                    score.cancel(true);
+                }
+                break;
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Break evaluation failed", e.getCause());
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(values[b], values[a]));
+
+            double eliteScore = 0;
+            for (int d = 0; d < mean.length; d++) {
+                double sum = 0, sumSquares = 0;
+                for (int e = 0; e < elite; e++) {
+                    double value = candidates[order[e]][d];
+                    sum += value;
+                    sumSquares += value * value;
+                }
+                mean[d] = sum / elite;
+                // keep a little exploration so the search does not collapse on a lucky sample
+                deviation[d] = Math.max(Math.sqrt(Math.max(0, sumSquares / elite - mean[d] * mean[d])),
+                        (UPPER[d] - LOWER[d]) * 0.005);
+            }
+            for (int e = 0; e < elite; e++) {
+                eliteScore += values[order[e]] / elite;
+            }
+            if (values[order[0]] > bestScore) {
+                bestScore = values[order[0]];
+                best = candidates[order[0]].clone();
+            }
+
+            System.out.printf(Locale.ROOT, "%4d %8.3f %8.3f %8.3f %8.3f %8.1f %8.4f %8.4f %8.2f%n",
+                    iteration, bestScore, eliteScore, mean[0], mean[1], mean[2],
+                    deviation[0], deviation[1], deviation[2]);
+        }
+
+        System.out.printf(Locale.ROOT, "table %.0fx%.0f: white x=%.1f, aim offset=%.2f deg, power=%.1f, "
+                        + "expected pocketed=%.3f%n",
+                width, height, best[0] * width, best[1], best[2], bestScore);
+        return best;
+    }
+
+    // mean pocket count over jittered strikes, so the recommendation survives small execution errors
+    double evaluate(double[] candidate, long seed) throws InterruptedException {
+        Random random = new Random(seed);
+        Table table = new Table(0, 0, width, height);
+        ShotSimulator simulator = new ShotSimulator(table, null, 1 / 60.0, 60 * 60, params);
+        double total = 0;
+        for (int r = 0; r < repeats; r++) {
+            // a cancelled evaluation stops at the next strike rather than playing out the rest
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Break evaluation cancelled");
+            }
+            List<Ball> balls = Racks.nineBall(table, params.getBallDimension());
+            Ball white = Racks.white(balls);
+            white.setPosition(table.getX() + candidate[0] * width, white.getY());
+
+            double angle = Racks.breakAngle(balls) + Math.toRadians(candidate[1] + random.nextGaussian() * 0.3);
+            double power = candidate[2] * (1 + random.nextGaussian() * 0.03);
+            ShotOutcome outcome = simulator.simulate(balls, Math.cos(angle), Math.sin(angle),
+                    params.getBaseVelocity() * power);
+            total += outcome.getPocketedCount() - (outcome.isWhitePocketed() ? WHITE_POCKETED_PENALTY : 0);
+        }
+        return total / repeats;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
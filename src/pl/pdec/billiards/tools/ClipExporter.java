@@ -0,0 +1,298 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.DrawableInterface;
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Stick;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.ShotSimulator;
+import pl.pdec.billiards.recording.FrameRenderer;
+import pl.pdec.billiards.recording.PngEncoder;
+import pl.pdec.billiards.recording.TrajectoryReader;
+import pl.pdec.billiards.recording.TrajectoryWriter;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ClipExporter {
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final Encoded END = new Encoded(-1, null);
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        double[] bounds = doubles(options.getOrDefault("table", "0,0,450,600"));
+        Table table = new Table(bounds[0], bounds[1], bounds[2], bounds[3]);
+        Path outDir = Paths.get(options.getOrDefault("out", "frames"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int queueSize = Integer.parseInt(options.getOrDefault("queue", "32"));
+        int aimFrames = Integer.parseInt(options.getOrDefault("aim-frames", "30"));
+        String rack = options.getOrDefault("rack", "9-ball");
+
+        byte[] trajectory;
+        if (options.containsKey("input")) {
+            trajectory = Files.readAllBytes(Paths.get(options.get("input")));
+        } else {
+            // no recording given, record a break so the exporter can be tried out on its own
+            trajectory = recordBreak(table, rack);
+            if (options.containsKey("record")) {
+                Files.write(Paths.get(options.get("record")), trajectory);
+            }
+        }
+
+        Files.createDirectories(outDir);
+        try (InputStream in = new ByteArrayInputStream(trajectory);
+             TrajectoryReader reader = new TrajectoryReader(in)) {
+            new ClipExporter(table, colours(table, rack), threads, queueSize).export(reader, outDir, aimFrames);
+        }
+    }
+
+    private final Table table;
+    private final Map<Integer, Color> colours;
+    private final int threads;
+    private final int queueSize;
+    private final ThreadLocal<PngEncoder> encoders = ThreadLocal.withInitial(PngEncoder::new);
+
+    public ClipExporter(Table table, Map<Integer, Color> colours, int threads, int queueSize) {
+        this.table = table;
+        this.colours = colours;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    public void export(TrajectoryReader reader, Path outDir, int aimFrames) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // one pooled image per render thread plus one being encoded
+        FrameRenderer renderer = FrameRenderer.around(table, 20, threads * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // frames read but not yet encoded, so a slow disk backs up into the reader instead of into memory
+        Semaphore inFlight = new Semaphore(threads * 4);
+        BlockingQueue<Encoded> encoded = new ArrayBlockingQueue<>(queueSize);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] written = new long[2];
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (Encoded frame = encoded.take(); frame != END; frame = encoded.take()) {
+                    // after a failure the queue is still drained so that the render threads never block on it
+                    if (failure.get() != null) {
+                        continue;
+                    }
+                    // a failure of any kind is recorded rather than ending this thread, which would leave the
+                    // queue full
+                    try {
+                        Path file = outDir.resolve(String.format(Locale.ROOT, "frame-%06d.png", frame.index));
+                        try (OutputStream out = new FileOutputStream(file.toFile())) {
+                            out.write(frame.png);
+                            written[0]++;
+                            written[1] += frame.png.length;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "clip-writer");
+        writer.start();
+
+        int index = 0;
+        Frame initial = Frame.of(reader, index);
+        if (!reader.nextFrame()) {
+            throw new RuntimeException("Trajectory has no frames");
+        }
+        Frame first = Frame.of(reader, index);
+        // the stick is not recorded, so it is posed along the white ball's first move and drawn back before the strike
+        int white = initial.indexOf(0);
+        double moveX = white < 0 ? 0 : first.x[white] - initial.x[white];
+        double moveY = white < 0 ? 0 : first.y[white] - initial.y[white];
+        double move = Math.hypot(moveX, moveY);
+        for (int aim = 0; move > 0 && aim < aimFrames; aim++) {
+            double gap = Ball.DIMENSION / 2. + 5 + 40 * Math.sin(Math.PI * aim / aimFrames);
+            Stick stick = new Stick();
+            stick.setPoint(initial.x[white] - moveX / move * gap, initial.y[white] - moveY / move * gap,
+                    initial.x[white], initial.y[white]);
+            submit(executor, renderer, inFlight, encoded, failure, initial.withIndex(index++), stick);
+        }
+        submit(executor, renderer, inFlight, encoded, failure, initial.withIndex(index++), null);
+        submit(executor, renderer, inFlight, encoded, failure, first.withIndex(index++), null);
+        while (failure.get() == null && reader.nextFrame()) {
+            submit(executor, renderer, inFlight, encoded, failure, Frame.of(reader, index++), null);
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        encoded.put(END);
+        writer.join();
+        if (failure.get() != null) {
+            throw new RuntimeException("Clip export failed", failure.get());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%d frames (%.1f s of play) in %.2f s, %.0f frames/s, %.1fx real time, "
+                        + "%.1f MB to %s%n", written[0], written[0] * FRAME_TIME, seconds, written[0] / seconds,
+                written[0] * FRAME_TIME / seconds, written[1] / 1e6, outDir);
+    }
+
+    private void submit(ExecutorService executor, FrameRenderer renderer, Semaphore inFlight,
+                        BlockingQueue<Encoded> encoded, AtomicReference<Throwable> failure, Frame frame,
+                        DrawableInterface overlay) throws InterruptedException {
+        inFlight.acquire();
+        executor.execute(() -> {
+            try {
+                List<DrawableInterface> items = new ArrayList<>(frame.numbers.length + 1);
+                for (int i = 0; i < frame.numbers.length; i++) {
+                    if (!frame.pocketed[i]) {
+                        Ball ball = new Ball(frame.numbers[i], frame.numbers[i] == 0,
+                                colours.getOrDefault(frame.numbers[i], Color.RED), 0, 0);
+                        ball.setPosition(frame.x[i], frame.y[i]);
+                        items.add(ball);
+                    }
+                }
+                if (overlay != null) {
+                    items.add(overlay);
+                }
+
+                ByteArrayOutputStream png = new ByteArrayOutputStream(64 * 1024);
+                BufferedImage image = renderer.acquire();
+                try {
+                    renderer.render(image, items);
+                    encoders.get().encode(image, png);
+                } finally {
+                    renderer.release(image);
+                }
+                encoded.put(new Encoded(frame.index, png.toByteArray()));
+            } catch (IOException e) {
+                failure.compareAndSet(null, new UncheckedIOException(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static byte[] recordBreak(Table table, String rack) throws IOException {
+        List<Ball> balls = Racks.rack(table, rack);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TrajectoryWriter writer = new TrajectoryWriter(out, balls, TrajectoryWriter.Mode.DELTA);
+        Racks.aimBreak(balls, 0, 3000);
+        List<Ball> onTable = new ArrayList<>(balls);
+        PhysicsEngine engine = PhysicsEngineType.MECHANIC.create(table, onTable, false);
+        AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        double t = 0;
+        for (int tick = 0; tick < 60 * 60 && ShotSimulator.isMoving(onTable); tick++) {
+            int substeps = substepper.substeps(onTable, FRAME_TIME);
+            for (int i = 0; i < substeps; i++) {
+                engine.integrate(t, FRAME_TIME / substeps);
+                onTable.removeIf(Ball::isInPocket);
+                t += FRAME_TIME / substeps;
+            }
+            writer.writeFrame(FRAME_TIME);
+        }
+        engine.shutdown();
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static double[] doubles(String list) {
+        String[] parts = list.split(",");
+        if (parts.length != 4) {
+            throw new RuntimeException("Table must be given as x,y,width,height");
+        }
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static Map<Integer, Color> colours(Table table, String rack) {
+        Map<Integer, Color> colours = new HashMap<>();
+        for (Ball ball : Racks.rack(table, rack)) {
+            colours.put(ball.getNumber(), ball.getColor());
+        }
+        return colours;
+    }
+
+    private static final class Frame {
+        private final int index;
+        private final int[] numbers;
+        private final double[] x, y;
+        private final boolean[] pocketed;
+
+        private Frame(int index, int[] numbers, double[] x, double[] y, boolean[] pocketed) {
+            this.index = index;
+            this.numbers = numbers;
+            this.x = x;
+            this.y = y;
+            this.pocketed = pocketed;
+        }
+
+        private static Frame of(TrajectoryReader reader, int index) {
+            int size = reader.size();
+            int[] numbers = new int[size];
+            double[] x = new double[size];
+            double[] y = new double[size];
+            boolean[] pocketed = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                numbers[i] = reader.getNumber(i);
+                x[i] = reader.getX(i);
+                y[i] = reader.getY(i);
+                pocketed[i] = reader.isInPocket(i);
+            }
+            return new Frame(index, numbers, x, y, pocketed);
+        }
+
+        private Frame withIndex(int index) {
+            return new Frame(index, numbers, x, y, pocketed);
+        }
+
+        private int indexOf(int number) {
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] == number) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Encoded {
+        private final int index;
+        private final byte[] png;
+
+        private Encoded(int index, byte[] png) {
+            this.index = index;
+            this.png = png;
+        }
+    }
+}
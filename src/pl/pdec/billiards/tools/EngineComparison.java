@@ -0,0 +1,130 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class EngineComparison {
+    private static final double FRAME_TIME = 1 / 60.0;
+
+    public static void main(String... args) {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        PhysicsEngineType reference = PhysicsEngineType.valueOf(
+                options.getOrDefault("reference", "mechanic").toUpperCase(Locale.ROOT));
+        boolean threaded = Boolean.parseBoolean(options.getOrDefault("threaded", "false"));
+        int repeats = Integer.parseInt(options.getOrDefault("repeats", "5"));
+        int maxTicks = Integer.parseInt(options.getOrDefault("max-ticks", "3600"));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "1.0"));
+
+        int engines = PhysicsEngineType.values().length;
+        long[] totalTicks = new long[engines];
+        long[] totalNanos = new long[engines];
+        double[] worstDivergence = new double[engines];
+        int[] pocketMismatches = new int[engines];
+
+        System.out.printf("%-12s %-9s %6s %10s %10s %10s %9s%n",
+                "shot", "engine", "ticks", "ticks/s", "mean[px]", "max[px]", "pockets");
+        for (BenchmarkShot shot : BenchmarkShot.ALL) {
+            String name = shot.getName();
+            List<Ball> expected = run(reference, threaded, shot.getAimOffset(), shot.getPower(), maxTicks,
+                    new long[2]);
+            for (PhysicsEngineType engine : PhysicsEngineType.values()) {
+                long[] timing = new long[2];
+                List<Ball> actual = null;
+                // the first run warms the engine up and is not timed
+                for (int r = 0; r <= repeats; r++) {
+                    long[] runTiming = new long[2];
+                    actual = run(engine, threaded, shot.getAimOffset(), shot.getPower(), maxTicks, runTiming);
+                    if (r > 0) {
+                        timing[0] += runTiming[0];
+                        timing[1] += runTiming[1];
+                    }
+                }
+
+                double sum = 0, max = 0;
+                int mismatches = 0;
+                for (int i = 0; i < expected.size(); i++) {
+                    Ball a = expected.get(i), b = actual.get(i);
+                    if (a.isInPocket() != b.isInPocket()) {
+                        mismatches++;
+                    } else if (!a.isInPocket()) {
+                        double distance = Math.hypot(a.getX() - b.getX(), a.getY() - b.getY());
+                        sum += distance;
+                        max = Math.max(max, distance);
+                    }
+                }
+                int compared = expected.size() - mismatches;
+                int index = engine.ordinal();
+                totalTicks[index] += timing[0];
+                totalNanos[index] += timing[1];
+                worstDivergence[index] = Math.max(worstDivergence[index], max);
+                pocketMismatches[index] += mismatches;
+                System.out.printf(Locale.ROOT, "%-12s %-9s %6d %10.0f %10.2f %10.2f %9d%n",
+                        name, engine.name().toLowerCase(Locale.ROOT), timing[0] / repeats,
+                        ticksPerSecond(timing[0], timing[1]), compared == 0 ? 0 : sum / compared, max, mismatches);
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-9s %10s %10s %9s %s%n", "engine", "ticks/s", "max[px]", "pockets", "verdict");
+        PhysicsEngineType fastest = null;
+        double fastestSpeed = 0;
+        for (PhysicsEngineType engine : PhysicsEngineType.values()) {
+            int index = engine.ordinal();
+            double speed = ticksPerSecond(totalTicks[index], totalNanos[index]);
+            boolean accurate = worstDivergence[index] <= tolerance && pocketMismatches[index] == 0;
+            if (accurate && speed > fastestSpeed) {
+                fastest = engine;
+                fastestSpeed = speed;
+            }
+            System.out.printf(Locale.ROOT, "%-9s %10.0f %10.2f %9d %s%n", engine.name().toLowerCase(Locale.ROOT),
+                    speed, worstDivergence[index], pocketMismatches[index],
+                    engine == reference ? "reference" : accurate ? "within tolerance" : "diverges");
+        }
+        System.out.printf(Locale.ROOT, "fastest engine within %.2f px of %s: %s%n", tolerance,
+                reference.name().toLowerCase(Locale.ROOT),
+                fastest == null ? "none" : fastest.name().toLowerCase(Locale.ROOT));
+    }
+
+    // returns the balls ordered by number, timing receives {ticks, nanos}
+    private static List<Ball> run(PhysicsEngineType type, boolean threaded, double aimOffset, double power,
+                                  int maxTicks, long[] timing) {
+        Table table = new Table(0, 0, 450, 600);
+        List<Ball> all = Racks.nineBall(table);
+        all.sort((a, b) -> Integer.compare(a.getNumber(), b.getNumber()));
+        Racks.aimBreak(all, aimOffset, PhysicsParams.DEFAULT.getBaseVelocity() * power);
+
+        List<Ball> onTable = new ArrayList<>(all);
+        PhysicsEngine engine = type.create(table, onTable, threaded);
+        AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        long start = System.nanoTime();
+        double t = 0;
+        int tick = 0;
+        for (; tick < maxTicks && ShotSimulator.isMoving(onTable); tick++) {
+            int substeps = substepper.substeps(onTable, FRAME_TIME);
+            for (int i = 0; i < substeps; i++) {
+                engine.integrate(t, FRAME_TIME / substeps);
+                onTable.removeIf(Ball::isInPocket);
+                t += FRAME_TIME / substeps;
+            }
+        }
+        timing[1] = System.nanoTime() - start;
+        timing[0] = tick;
+        engine.shutdown();
+        return all;
+    }
+
+    private static double ticksPerSecond(long ticks, long nanos) {
+        return nanos == 0 ? 0 : ticks * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,314 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotOutcome;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class GoldenCorpus {
+    private static final int MAGIC = 0x474f4c44;
+    private static final int VERSION = 1;
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final int MAX_TICKS = 60 * 60;
+    private static final int MAX_REPORTED_FAILURES = 20;
+    private static final int WARMUP_SHOTS = 200;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        String mode = options.getOrDefault("mode", "check");
+        String file = options.getOrDefault("corpus", "golden.corpus");
+        PhysicsEngineType engine = PhysicsEngineType.valueOf(
+                options.getOrDefault("engine", "mechanic").toUpperCase(Locale.ROOT));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            if (mode.equals("record")) {
+                int count = Integer.parseInt(options.getOrDefault("shots", "2000"));
+                long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+                record(file, engine, generate(count, seed), threads, executor);
+            } else if (mode.equals("check")) {
+                double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.5"));
+                double slowdown = Double.parseDouble(options.getOrDefault("slowdown", "25"));
+                if (!check(file, engine, tolerance, slowdown, threads, executor)) {
+                    System.exit(1);
+                }
+            } else {
+                throw new RuntimeException("Unknown mode " + mode + ", expected record or check");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void record(String file, PhysicsEngineType engine, List<Shot> shots, int threads,
+                               ExecutorService executor) throws IOException, InterruptedException {
+        Replay replay = replay(shots, engine, executor);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(engine.name());
+            out.writeLong(replay.nanos);
+            out.writeInt(threads);
+            out.writeInt(Runtime.getRuntime().availableProcessors());
+            out.writeInt(shots.size());
+            for (int s = 0; s < shots.size(); s++) {
+                Shot shot = shots.get(s);
+                shot.write(out);
+                ShotOutcome outcome = replay.outcomes[s];
+                out.writeInt(outcome.getTicks());
+                for (int i = 0; i < outcome.size(); i++) {
+                    out.writeDouble(outcome.getX(i));
+                    out.writeDouble(outcome.getY(i));
+                    out.writeBoolean(outcome.isPocketed(i));
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "recorded %d shots with %s in %.1f ms to %s%n",
+                shots.size(), engine.name().toLowerCase(Locale.ROOT), replay.nanos / 1e6, file);
+    }
+
+    private static boolean check(String file, PhysicsEngineType engine, double tolerance, double slowdown,
+                                 int threads, ExecutorService executor) throws IOException, InterruptedException {
+        List<Shot> shots = new ArrayList<>();
+        List<double[]> expected = new ArrayList<>();
+        String recordedEngine;
+        long recordedNanos;
+        int recordedThreads, recordedProcessors;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new RuntimeException(file + " is not a golden corpus of version " + VERSION);
+            }
+            recordedEngine = in.readUTF();
+            recordedNanos = in.readLong();
+            recordedThreads = in.readInt();
+            recordedProcessors = in.readInt();
+            int count = in.readInt();
+            for (int s = 0; s < count; s++) {
+                Shot shot = Shot.read(in);
+                shots.add(shot);
+                // ticks, then x, y and a pocketed flag per ball
+                double[] state = new double[1 + shot.size() * 3];
+                state[0] = in.readInt();
+                for (int i = 0; i < shot.size(); i++) {
+                    state[1 + i * 3] = in.readDouble();
+                    state[2 + i * 3] = in.readDouble();
+                    state[3 + i * 3] = in.readBoolean() ? 1 : 0;
+                }
+                expected.add(state);
+            }
+        }
+
+        Replay replay = replay(shots, engine, executor);
+        int failures = 0;
+        double worst = 0;
+        for (int s = 0; s < shots.size(); s++) {
+            ShotOutcome outcome = replay.outcomes[s];
+            double[] state = expected.get(s);
+            double divergence = 0;
+            int pocketMismatches = 0;
+            for (int i = 0; i < outcome.size(); i++) {
+                boolean pocketed = state[3 + i * 3] != 0;
+                if (pocketed != outcome.isPocketed(i)) {
+                    pocketMismatches++;
+                } else if (!pocketed) {
+                    divergence = Math.max(divergence, Math.hypot(outcome.getX(i) - state[1 + i * 3],
+                            outcome.getY(i) - state[2 + i * 3]));
+                }
+            }
+            worst = Math.max(worst, divergence);
+            if (divergence > tolerance || pocketMismatches > 0) {
+                if (failures < MAX_REPORTED_FAILURES) {
+                    System.out.printf(Locale.ROOT, "FAIL shot %d (%s): max divergence %.3f px, %d pocket mismatches%n",
+                            s, shots.get(s).name, divergence, pocketMismatches);
+                }
+                failures++;
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%d shots, %d failed, worst divergence %.3f px (tolerance %.3f)%n",
+                shots.size(), failures, worst, tolerance);
+        // wall times only mean something against a run with the same parallelism, on another setup the timing is
+        // reported but does not gate
+        int processors = Runtime.getRuntime().availableProcessors();
+        boolean comparable = threads == recordedThreads && processors == recordedProcessors;
+        double change = (replay.nanos - recordedNanos) * 100.0 / recordedNanos;
+        boolean tooSlow = comparable && change > slowdown;
+        System.out.printf(Locale.ROOT, "replay %.1f ms with %s, recorded %.1f ms with %s, %+.1f%% (limit +%.1f%%)%s%n",
+                replay.nanos / 1e6, engine.name().toLowerCase(Locale.ROOT), recordedNanos / 1e6,
+                recordedEngine.toLowerCase(Locale.ROOT), change, slowdown, tooSlow ? " TOO SLOW" : "");
+        if (!comparable) {
+            System.out.printf("timing not compared: recorded with %d threads on %d processors, checked with %d "
+                    + "threads on %d processors%n", recordedThreads, recordedProcessors, threads, processors);
+        }
+        return failures == 0 && !tooSlow;
+    }
+
+    // replays every shot across the executor; a slice of the corpus runs untimed first so that both record and
+    // check time a warm JIT
+    private static Replay replay(List<Shot> shots, PhysicsEngineType engine, ExecutorService executor)
+            throws InterruptedException {
+        run(shots.subList(0, Math.min(shots.size(), WARMUP_SHOTS)), engine, executor);
+        long start = System.nanoTime();
+        ShotOutcome[] outcomes = run(shots, engine, executor);
+        return new Replay(outcomes, System.nanoTime() - start);
+    }
+
+    private static ShotOutcome[] run(List<Shot> shots, PhysicsEngineType engine, ExecutorService executor)
+            throws InterruptedException {
+        List<Future<ShotOutcome>> futures = new ArrayList<>(shots.size());
+        for (Shot shot : shots) {
+            futures.add(executor.submit(() -> shot.simulate(engine)));
+        }
+        ShotOutcome[] outcomes = new ShotOutcome[shots.size()];
+        try {
+            for (int s = 0; s < outcomes.length; s++) {
+                outcomes[s] = futures.get(s).get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Replay failed", e.getCause());
+        }
+        return outcomes;
+    }
+
+    // breaks from varied white positions plus random open-table positions with up to 16 balls
+    private static List<Shot> generate(int count, long seed) {
+        Random random = new Random(seed);
+        Table table = new Table(0, 0, 450, 600);
+        List<Shot> shots = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            List<Ball> balls;
+            String name;
+            double angle, power;
+            if (s % 3 == 2) {
+                name = "open-" + s;
+                balls = Racks.randomField(table, 2 + random.nextInt(15), random.nextLong());
+                angle = random.nextDouble() * 2 * Math.PI;
+                power = 50 + random.nextDouble() * 350;
+            } else {
+                name = (s % 3 == 0 ? "9-ball-" : "8-ball-") + s;
+                balls = s % 3 == 0 ? Racks.nineBall(table) : Racks.eightBall(table);
+                Ball white = Racks.white(balls);
+                white.setPosition(white.getX() + (random.nextDouble() * 2 - 1) * 150, white.getY());
+                angle = Racks.breakAngle(balls) + Math.toRadians((random.nextDouble() * 2 - 1) * 3);
+                power = 100 + random.nextDouble() * 300;
+            }
+            shots.add(new Shot(name, balls, Math.cos(angle), Math.sin(angle),
+                    PhysicsParams.DEFAULT.getBaseVelocity() * power));
+        }
+        return shots;
+    }
+
+    private static final class Replay {
+        private final ShotOutcome[] outcomes;
+        private final long nanos;
+
+        private Replay(ShotOutcome[] outcomes, long nanos) {
+            this.outcomes = outcomes;
+            this.nanos = nanos;
+        }
+    }
+
+    // the starting position is stored in full, so the corpus does not depend on how the racks are laid out later
+    private static final class Shot {
+        private final String name;
+        private final int[] numbers;
+        private final double[] x, y;
+        private final double directionX, directionY, velocity;
+
+        private Shot(String name, List<Ball> balls, double directionX, double directionY, double velocity) {
+            this.name = name;
+            this.numbers = new int[balls.size()];
+            this.x = new double[balls.size()];
+            this.y = new double[balls.size()];
+            for (int i = 0; i < balls.size(); i++) {
+                numbers[i] = balls.get(i).getNumber();
+                x[i] = balls.get(i).getX();
+                y[i] = balls.get(i).getY();
+            }
+            this.directionX = directionX;
+            this.directionY = directionY;
+            this.velocity = velocity;
+        }
+
+        private Shot(String name, int[] numbers, double[] x, double[] y, double directionX, double directionY,
+                     double velocity) {
+            this.name = name;
+            this.numbers = numbers;
+            this.x = x;
+            this.y = y;
+            this.directionX = directionX;
+            this.directionY = directionY;
+            this.velocity = velocity;
+        }
+
+        private int size() {
+            return numbers.length;
+        }
+
+        private ShotOutcome simulate(PhysicsEngineType engine) {
+            Table table = new Table(0, 0, 450, 600);
+            List<Ball> balls = new ArrayList<>(numbers.length);
+            for (int i = 0; i < numbers.length; i++) {
+                Ball ball = new Ball(numbers[i], numbers[i] == 0, numbers[i] == 0 ? Color.WHITE : Color.RED, 0, 0);
+                ball.setPosition(x[i], y[i]);
+                balls.add(ball);
+            }
+            ShotSimulator simulator = new ShotSimulator(table, null, FRAME_TIME, MAX_TICKS, PhysicsParams.DEFAULT,
+                    engine);
+            return simulator.simulate(balls, directionX, directionY, velocity);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeDouble(directionX);
+            out.writeDouble(directionY);
+            out.writeDouble(velocity);
+            out.writeShort(numbers.length);
+            for (int i = 0; i < numbers.length; i++) {
+                out.writeInt(numbers[i]);
+                out.writeDouble(x[i]);
+                out.writeDouble(y[i]);
+            }
+        }
+
+        private static Shot read(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            double directionX = in.readDouble();
+            double directionY = in.readDouble();
+            double velocity = in.readDouble();
+            int size = in.readUnsignedShort();
+            int[] numbers = new int[size];
+            double[] x = new double[size];
+            double[] y = new double[size];
+            for (int i = 0; i < size; i++) {
+                numbers[i] = in.readInt();
+                x[i] = in.readDouble();
+                y[i] = in.readDouble();
+            }
+            return new Shot(name, numbers, x, y, directionX, directionY, velocity);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotSimulator;
+import pl.pdec.billiards.recording.PocketHeatmap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HeatmapRunner {
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final int MAX_TICKS = 60 * 60;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        long shots = Long.parseLong(options.getOrDefault("shots", "1000000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int columns = Integer.parseInt(options.getOrDefault("columns", "45"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", "60"));
+        int mergeEvery = Integer.parseInt(options.getOrDefault("merge-every", "256"));
+        double interval = Double.parseDouble(options.getOrDefault("interval", "5"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        String rack = options.getOrDefault("rack", "mixed");
+        Path output = Paths.get(options.getOrDefault("output", "heatmap.txt"));
+        PhysicsEngineType engine = PhysicsEngineType.valueOf(
+                options.getOrDefault("engine", "mechanic").toUpperCase(Locale.ROOT));
+        double width = Double.parseDouble(options.getOrDefault("width", "450"));
+        double height = Double.parseDouble(options.getOrDefault("height", "600"));
+
+        Table table = new Table(0, 0, width, height);
+        PocketHeatmap heatmap = new PocketHeatmap(table, columns, rows);
+        AtomicLong next = new AtomicLong();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                PocketHeatmap.Partial partial = heatmap.partial(mergeEvery);
+                ShotSimulator simulator = new ShotSimulator(table, null, FRAME_TIME, MAX_TICKS,
+                        PhysicsParams.DEFAULT, engine);
+                long shot;
+                while ((shot = next.getAndIncrement()) < shots) {
+                    // every shot has its own seed, so the aggregate does not depend on the thread count
+                    SplittableRandom random = new SplittableRandom(seed * 0x9e3779b97f4a7c15L + shot);
+                    String kind = !rack.equals("mixed") ? rack
+                            : shot % 3 == 0 ? "9-ball" : shot % 3 == 1 ? "8-ball" : "field";
+                    List<Ball> balls = rack(table, kind, random);
+                    double angle = aim(balls, kind.equals("field"), random);
+                    double power = 50 + random.nextDouble() * 350;
+                    partial.add(simulator.simulate(balls, Math.cos(angle), Math.sin(angle),
+                            PhysicsParams.DEFAULT.getBaseVelocity() * power));
+                }
+                partial.merge();
+            }, "heatmap-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long intervalNanos = (long) (interval * 1e9);
+        heatmap.startFlushing(output, intervalNanos, TimeUnit.NANOSECONDS);
+        long start = System.nanoTime();
+        System.out.printf("%8s %12s %10s %10s%n", "time[s]", "shots", "shots/s", "heap[MB]");
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                worker.join(Math.max(1, intervalNanos / 1_000_000));
+                if (worker.isAlive()) {
+                    progress(heatmap, start);
+                }
+            }
+        }
+        heatmap.close();
+        progress(heatmap, start);
+
+        long pocketed = 0, white = 0;
+        for (int i = 0; i < table.getPockets().size(); i++) {
+            pocketed += heatmap.getPocketed(i);
+            white += heatmap.getWhitePocketed(i);
+        }
+        System.out.printf(Locale.ROOT, "%d shots: %d balls resting, %d pocketed, %d scratches, %d off the table, "
+                        + "written to %s%n", heatmap.getShots(), heatmap.getResting(), pocketed, white,
+                heatmap.getOffTable(), output);
+    }
+
+    private static void progress(PocketHeatmap heatmap, long start) {
+        Runtime runtime = Runtime.getRuntime();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long shots = heatmap.getShots();
+        System.out.printf(Locale.ROOT, "%8.1f %12d %10.0f %10.1f%n", elapsed, shots, shots / elapsed,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+    }
+
+    private static List<Ball> rack(Table table, String kind, SplittableRandom random) {
+        switch (kind) {
+            case "9-ball":
+            case "8-ball": {
+                List<Ball> balls = Racks.rack(table, kind);
+                Ball white = Racks.white(balls);
+                white.setPosition(white.getX() + (random.nextDouble() * 2 - 1) * table.getWidth() / 3, white.getY());
+                return balls;
+            }
+            case "field":
+                return Racks.randomField(table, 2 + random.nextInt(15), random.nextLong());
+            default:
+                throw new RuntimeException("Unknown rack " + kind + ", expected mixed, 9-ball, 8-ball or field");
+        }
+    }
+
+    // breaks aim at the lead ball with a little spread, open tables are struck in any direction
+    private static double aim(List<Ball> balls, boolean open, SplittableRandom random) {
+        if (open) {
+            return random.nextDouble() * 2 * Math.PI;
+        }
+        return Racks.breakAngle(balls) + Math.toRadians((random.nextDouble() * 2 - 1) * 3);
+    }
+}
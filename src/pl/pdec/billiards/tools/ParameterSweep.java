@@ -0,0 +1,119 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Cushions;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotOutcome;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParameterSweep {
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        PhysicsParams defaults = PhysicsParams.DEFAULT;
+        double[] frictions = doubles(options.get("friction"), defaults.getFriction());
+        double[] stops = doubles(options.get("stop"), defaults.getStopVelocity());
+        double[] baseVelocities = doubles(options.get("base-velocity"), defaults.getBaseVelocity());
+        double[] dimensions = doubles(options.get("dimension"), defaults.getBallDimension());
+        double[] restitutions = doubles(options.get("restitution"), defaults.getRestitution());
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        List<PhysicsParams> grid = new ArrayList<>();
+        for (double friction : frictions) {
+            for (double stop : stops) {
+                for (double baseVelocity : baseVelocities) {
+                    for (double dimension : dimensions) {
+                        for (double restitution : restitutions) {
+                            grid.add(new PhysicsParams(friction, stop, baseVelocity, (int) dimension, restitution));
+                        }
+                    }
+                }
+            }
+        }
+
+        PrintWriter out = options.containsKey("out")
+                ? new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.get("out")), StandardCharsets.UTF_8))
+                : new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        out.println("friction,stop_velocity,base_velocity,dimension,restitution,shot,pocketed,white_pocketed,"
+                + "ticks,white_x,white_y,millis");
+        out.flush();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<String> results = new ExecutorCompletionService<>(executor);
+        int tasks = 0;
+        for (PhysicsParams params : grid) {
+            for (BenchmarkShot shot : BenchmarkShot.ALL) {
+                results.submit(() -> run(params, shot.getName(), shot.getAimOffset(), shot.getPower()));
+                tasks++;
+            }
+        }
+
+        try {
+            // rows are written in completion order so long sweeps can be watched as they go
+            for (int i = 0; i < tasks; i++) {
+                out.println(results.take().get());
+                out.flush();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Sweep run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private static String run(PhysicsParams params, String name, double aimOffset, double power) {
+        long start = System.nanoTime();
+        // the cushion grid is sized for the swept ball, as the substeps are inside the simulator
+        Table table = new Table(0, 0, 450, 600, 20, 20,
+                Cushions.rectangle(0, 0, 450, 600, 2 * params.getBallDimension()));
+        List<Ball> balls = Racks.nineBall(table, params.getBallDimension());
+        double angle = Racks.breakAngle(balls) + Math.toRadians(aimOffset);
+
+        ShotSimulator simulator = new ShotSimulator(table, null, 1 / 60.0, 60 * 60, params);
+        ShotOutcome outcome = simulator.simulate(balls, Math.cos(angle), Math.sin(angle),
+                params.getBaseVelocity() * power);
+
+        double whiteX = Double.NaN, whiteY = Double.NaN;
+        for (int i = 0; i < outcome.size(); i++) {
+            if (outcome.getNumber(i) == 0) {
+                whiteX = outcome.getX(i);
+                whiteY = outcome.getY(i);
+            }
+        }
+        return String.format(Locale.ROOT, "%s,%s,%s,%d,%s,%s,%d,%b,%d,%.2f,%.2f,%d",
+                params.getFriction(), params.getStopVelocity(), params.getBaseVelocity(), params.getBallDimension(),
+                params.getRestitution(), name, outcome.getPocketedCount(), outcome.isWhitePocketed(),
+                outcome.getTicks(), whiteX, whiteY, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static double[] doubles(String list, double fallback) {
+        if (list == null) {
+            return new double[]{fallback};
+        }
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,136 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+import pl.pdec.billiards.logic.PositionIndex;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// builds a position index from generated table states and measures query latency and recall against a linear scan
+public class PositionSearch {
+
+    public static void main(String... args) {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        int positions = Integer.parseInt(options.getOrDefault("positions", "1000000"));
+        int queries = Integer.parseInt(options.getOrDefault("queries", "1000"));
+        int recallQueries = Integer.parseInt(options.getOrDefault("recall", "100"));
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+        int tables = Integer.parseInt(options.getOrDefault("tables", "16"));
+        int hashes = Integer.parseInt(options.getOrDefault("hashes", "8"));
+        double bucketWidth = Double.parseDouble(options.getOrDefault("bucket-width", "0.35"));
+        double jitter = Double.parseDouble(options.getOrDefault("jitter", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        Table table = new Table(0, 0, 450, 600);
+        PositionIndex index = new PositionIndex(table, 16, null, tables, hashes, bucketWidth, seed);
+        Random random = new Random(seed);
+
+        // positions are generated and inserted one by one, the way shots are recorded
+        // a reservoir of recorded positions to query for, the tag is the insertion number
+        List<List<Ball>> sample = new ArrayList<>();
+        List<Long> sampleTags = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int p = 0; p < positions; p++) {
+            List<Ball> balls = position(table, random);
+            index.add(balls, p);
+            if (sample.size() < queries + recallQueries) {
+                sample.add(balls);
+                sampleTags.add((long) p);
+            } else if (random.nextInt(p + 1) < sample.size()) {
+                int replaced = random.nextInt(sample.size());
+                sample.set(replaced, balls);
+                sampleTags.set(replaced, (long) p);
+            }
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.printf(Locale.ROOT, "indexed %d positions in %.1f s (%.0f inserts/s incl. generation), heap %.0f MB%n",
+                index.size(), buildSeconds, positions / buildSeconds,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+
+        // queries are recorded positions nudged by a few pixels, so the original should come back
+        LatencyRecorder latencies = new LatencyRecorder(queries);
+        int originals = 0;
+        for (int q = 0; q < queries; q++) {
+            List<Ball> query = nudge(sample.get(q), jitter, random);
+            long queryStart = System.nanoTime();
+            List<PositionIndex.Match> matches = index.nearest(query, k);
+            latencies.record(System.nanoTime() - queryStart);
+            for (PositionIndex.Match match : matches) {
+                if (match.getTag() == sampleTags.get(q)) {
+                    originals++;
+                }
+            }
+        }
+        long[] p = latencies.percentiles(0.5, 0.99, 1.0);
+        System.out.printf(Locale.ROOT, "%d queries, k=%d: p50 %.3f ms, p99 %.3f ms, max %.3f ms, "
+                        + "original position among the matches in %.1f%%%n",
+                queries, k, p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, originals * 100.0 / Math.max(1, queries));
+
+        LatencyRecorder exactLatencies = new LatencyRecorder(Math.max(1, recallQueries));
+        long found = 0, wanted = 0;
+        for (int q = 0; q < recallQueries; q++) {
+            List<Ball> query = nudge(sample.get(queries + q), jitter * 5, random);
+            List<PositionIndex.Match> approximate = index.nearest(query, k);
+            long exactStart = System.nanoTime();
+            List<PositionIndex.Match> exact = index.nearestExact(query, k);
+            exactLatencies.record(System.nanoTime() - exactStart);
+            Set<Long> tags = new HashSet<>();
+            for (PositionIndex.Match match : approximate) {
+                tags.add(match.getTag());
+            }
+            for (PositionIndex.Match match : exact) {
+                wanted++;
+                if (tags.contains(match.getTag())) {
+                    found++;
+                }
+            }
+        }
+        if (recallQueries > 0) {
+            System.out.printf(Locale.ROOT, "recall@%d %.3f over %d queries nudged by %.0f px, linear scan p50 %.1f ms%n",
+                    k, found / (double) Math.max(1, wanted), recallQueries, jitter * 5,
+                    exactLatencies.percentiles(0.5)[0] / 1e6);
+        }
+    }
+
+    // racks scattered by a break of random strength with some balls already pocketed, plus open tables
+    private static List<Ball> position(Table table, Random random) {
+        if (random.nextInt(3) == 2) {
+            return Racks.randomField(table, 2 + random.nextInt(15), random.nextLong());
+        }
+        List<Ball> balls = random.nextBoolean() ? Racks.nineBall(table) : Racks.eightBall(table);
+        double scatter = random.nextDouble() * 200;
+        double pocketed = random.nextDouble() * 0.6;
+        for (Ball ball : balls) {
+            ball.setPosition(clamp(ball.getX() + random.nextGaussian() * scatter, table.getX(), table.getWidth()),
+                    clamp(ball.getY() + random.nextGaussian() * scatter, table.getY(), table.getHeight()));
+            if (!ball.isWhite() && random.nextDouble() < pocketed) {
+                ball.setIsInPocket();
+            }
+        }
+        return balls;
+    }
+
+    private static List<Ball> nudge(List<Ball> balls, double jitter, Random random) {
+        List<Ball> nudged = new ArrayList<>(balls.size());
+        for (Ball ball : balls) {
+            Ball copy = ball.copy();
+            copy.setPosition(ball.getX() + random.nextGaussian() * jitter, ball.getY() + random.nextGaussian() * jitter);
+            nudged.add(copy);
+        }
+        return nudged;
+    }
+
+    private static double clamp(double value, double origin, double length) {
+        return Math.max(origin + Ball.DIMENSION, Math.min(origin + length - Ball.DIMENSION, value));
+    }
+}
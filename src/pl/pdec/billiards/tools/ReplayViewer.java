@@ -0,0 +1,220 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotSimulator;
+import pl.pdec.billiards.recording.MotionTimeline;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// records a shot as a motion timeline and plays it back with a scrub bar, any speed and rewind; every frame is
+// evaluated straight from the segments, no ticks are replayed
+public class ReplayViewer extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final double[] SPEEDS = new double[]{-4, -1, -0.25, 0.25, 1, 4};
+
+    public static void main(String... args) {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        String rack = options.getOrDefault("rack", "9-ball");
+        double power = Double.parseDouble(options.getOrDefault("power", "300"));
+        double aim = Double.parseDouble(options.getOrDefault("aim", "0"));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.5"));
+        PhysicsEngineType engine = PhysicsEngineType.valueOf(
+                options.getOrDefault("engine", "mechanic").toUpperCase(Locale.ROOT));
+
+        Table table = new Table(40, 40, 450, 600);
+        List<Ball> balls = Racks.rack(table, rack);
+        long start = System.nanoTime();
+        List<double[]> ticks = new ArrayList<>();
+        MotionTimeline timeline = record(table, balls, engine, power, aim, tolerance, ticks);
+        long recordNanos = System.nanoTime() - start;
+        report(timeline, recordNanos, ticks);
+        if (options.containsKey("headless") || GraphicsEnvironment.isHeadless()) {
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Replay");
+            frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+            frame.add(new ReplayViewer(table, timeline));
+            frame.pack();
+            frame.setVisible(true);
+        });
+    }
+
+    private final Table table;
+    private final MotionTimeline timeline;
+    private final List<Ball> balls;
+    private final JSlider slider;
+    private final JLabel clock = new JLabel();
+    private final Timer timer;
+    private double time = 0;
+    private double speed = 1;
+    private long lastFrame = 0;
+    private boolean updating = false;
+
+    public ReplayViewer(Table table, MotionTimeline timeline) {
+        super(new BorderLayout());
+        this.table = table;
+        this.timeline = timeline;
+        this.balls = timeline.createBalls();
+
+        JPanel view = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                paintTable(g);
+            }
+        };
+        view.setPreferredSize(new Dimension((int) (table.getX() * 2 + table.getWidth()),
+                (int) (table.getY() * 2 + table.getHeight())));
+        add(view, BorderLayout.CENTER);
+
+        // the slider counts milliseconds of shot time
+        slider = new JSlider(0, (int) Math.ceil(timeline.getDuration() * 1000), 0);
+        slider.addChangeListener(e -> {
+            if (!updating) {
+                seek(slider.getValue() / 1000.0);
+            }
+        });
+
+        JButton play = new JButton("Pause");
+        timer = new Timer(15, e -> advance());
+        play.addActionListener(e -> {
+            if (timer.isRunning()) {
+                timer.stop();
+                play.setText("Play");
+            } else {
+                if (speed > 0 && time >= timeline.getDuration()) {
+                    seek(0);
+                } else if (speed < 0 && time <= 0) {
+                    seek(timeline.getDuration());
+                }
+                lastFrame = System.nanoTime();
+                timer.start();
+                play.setText("Pause");
+            }
+        });
+
+        JPanel controls = new JPanel(new BorderLayout());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(play);
+        ButtonGroup group = new ButtonGroup();
+        for (double value : SPEEDS) {
+            JToggleButton button = new JToggleButton(String.format(Locale.ROOT, "%sx", format(value)), value == 1);
+            button.addActionListener(e -> speed = value);
+            group.add(button);
+            buttons.add(button);
+        }
+        buttons.add(clock);
+        controls.add(buttons, BorderLayout.NORTH);
+        controls.add(slider, BorderLayout.SOUTH);
+        add(controls, BorderLayout.SOUTH);
+
+        seek(0);
+        lastFrame = System.nanoTime();
+        timer.start();
+    }
+
+    private void advance() {
+        long now = System.nanoTime();
+        double next = time + (now - lastFrame) / 1e9 * speed;
+        lastFrame = now;
+        seek(Math.max(0, Math.min(timeline.getDuration(), next)));
+    }
+
+    private void seek(double t) {
+        time = t;
+        timeline.evaluate(t, balls);
+        updating = true;
+        slider.setValue((int) Math.round(t * 1000));
+        updating = false;
+        clock.setText(String.format(Locale.ROOT, "%6.2f / %.2f s", t, timeline.getDuration()));
+        repaint();
+    }
+
+    private void paintTable(Graphics g) {
+        table.draw(g);
+        for (Ball ball : balls) {
+            if (!ball.isInPocket()) {
+                ball.draw(g);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    // a break at the lead ball turned by the aim offset in degrees, fed to the timeline after every substep; the
+    // simulated positions at every tick go to ticks as t, x0, y0, x1, y1, ... for checking the timeline against
+    private static MotionTimeline record(Table table, List<Ball> balls, PhysicsEngineType engineType, double power,
+                                         double aim, double tolerance, List<double[]> ticks) {
+        Racks.aimBreak(balls, aim, PhysicsParams.DEFAULT.getBaseVelocity() * power);
+
+        MotionTimeline timeline = new MotionTimeline(balls, PhysicsParams.DEFAULT, tolerance);
+        List<Ball> onTable = new ArrayList<>(balls);
+        PhysicsEngine engine = engineType.create(table, onTable, false);
+        AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        double t = 0;
+        for (int tick = 0; tick < 60 * 60 && ShotSimulator.isMoving(onTable); tick++) {
+            int substeps = substepper.substeps(onTable, FRAME_TIME);
+            for (int i = 0; i < substeps; i++) {
+                engine.integrate(t, FRAME_TIME / substeps);
+                onTable.removeIf(Ball::isInPocket);
+                t += FRAME_TIME / substeps;
+                timeline.observe(t);
+            }
+            double[] positions = new double[1 + balls.size() * 2];
+            positions[0] = t;
+            for (int i = 0; i < balls.size(); i++) {
+                positions[1 + i * 2] = balls.get(i).isInPocket() ? Double.NaN : balls.get(i).getX();
+                positions[2 + i * 2] = balls.get(i).getY();
+            }
+            ticks.add(positions);
+        }
+        engine.shutdown();
+        return timeline;
+    }
+
+    private static void report(MotionTimeline timeline, long recordNanos, List<double[]> ticks) {
+        List<Ball> balls = timeline.createBalls();
+        double error = 0;
+        for (double[] positions : ticks) {
+            timeline.evaluate(positions[0], balls);
+            for (int i = 0; i < balls.size(); i++) {
+                if (!Double.isNaN(positions[1 + i * 2])) {
+                    error = Math.max(error, Math.hypot(balls.get(i).getX() - positions[1 + i * 2],
+                            balls.get(i).getY() - positions[2 + i * 2]));
+                }
+            }
+        }
+        Random random = new Random(1);
+        int samples = 100_000;
+        // warm the evaluation up before timing random seeks across the whole shot
+        for (int i = 0; i < samples; i++) {
+            timeline.evaluate(random.nextDouble() * timeline.getDuration(), balls);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            timeline.evaluate(random.nextDouble() * timeline.getDuration(), balls);
+        }
+        long seekNanos = (System.nanoTime() - start) / samples;
+        System.out.printf(Locale.ROOT, "%.2f s shot, %d balls, %d ticks as %d segments, recorded in %.1f ms, "
+                        + "random seek %.2f us, max error against the ticks %.3f px%n", timeline.getDuration(),
+                timeline.size(), ticks.size(), timeline.getSegmentCount(), recordNanos / 1e6, seekNanos / 1e3,
+                error);
+    }
+}
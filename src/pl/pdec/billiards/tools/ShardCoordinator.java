@@ -0,0 +1,659 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.components.TableSnapshot;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotOutcome;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// shards shot evaluations across worker JVMs started by the coordinator; jobs and results travel as binary frames
+// over the workers' stdin and stdout, so nothing but the local JDK is needed
+public class ShardCoordinator {
+    private static final int MAGIC = 0x53484152;
+    private static final int VERSION = 1;
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final int MAX_TICKS = 60 * 60;
+    private static final int MAX_BALLS = 32;
+    private static final long MIN_STRAGGLER_NANOS = 50_000_000L;
+    // a job in flight on this many workers that died is taken to be what kills them
+    private static final int MAX_LOSSES = 2;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (options.containsKey("worker")) {
+            work(Integer.parseInt(options.getOrDefault("threads", "1")),
+                    Double.parseDouble(options.getOrDefault("throttle", "1")));
+            return;
+        }
+
+        int workerCount = Integer.parseInt(options.getOrDefault("workers", String.valueOf(Math.max(2, processors / 2))));
+        int workerThreads = Integer.parseInt(options.getOrDefault("worker-threads",
+                String.valueOf(Math.max(1, processors / workerCount))));
+        int count = Integer.parseInt(options.getOrDefault("jobs", "2000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int window = Integer.parseInt(options.getOrDefault("window", String.valueOf(workerThreads * 2)));
+        double straggler = Double.parseDouble(options.getOrDefault("straggler", "4"));
+        double throttle = Double.parseDouble(options.getOrDefault("throttle", "1"));
+        int verify = Integer.parseInt(options.getOrDefault("verify", "20"));
+        String heap = options.getOrDefault("heap", "256m");
+        PhysicsEngineType engine = PhysicsEngineType.valueOf(
+                options.getOrDefault("engine", "mechanic").toUpperCase(Locale.ROOT));
+
+        Table table = new Table(0, 0, 450, 600);
+        ShardCoordinator coordinator = new ShardCoordinator(generate(table, count, seed), window, straggler);
+        // the throttle slows the first worker down to show the rebalancing
+        for (int i = 0; i < workerCount; i++) {
+            coordinator.startWorker(engine, table.getCushions().size(), workerThreads, heap, i == 0 ? throttle : 1);
+        }
+        long start = System.nanoTime();
+        coordinator.run();
+        long elapsed = System.nanoTime() - start;
+        coordinator.shutdown();
+
+        coordinator.report(elapsed);
+        boolean consistent = coordinator.verify(table, engine, verify);
+        System.exit(consistent && coordinator.failed() == 0 ? 0 : 1);
+    }
+
+    private final Job[] jobs;
+    private final Result[] results;
+    private final int window;
+    private final double straggler;
+    private final List<Worker> workers = new ArrayList<>();
+
+    // guarded by this
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+    private int completed = 0, reissued = 0, duplicates = 0;
+    private long latencyTotal = 0;
+    private boolean finished = false;
+
+    public ShardCoordinator(List<Job> jobs, int window, double straggler) {
+        this.jobs = jobs.toArray(new Job[0]);
+        this.results = new Result[this.jobs.length];
+        this.window = window;
+        this.straggler = straggler;
+        if (window < 1) {
+            throw new RuntimeException("Window must hold at least one job");
+        }
+        for (int i = 0; i < this.jobs.length; i++) {
+            if (this.jobs[i].id != i) {
+                throw new RuntimeException("Job " + this.jobs[i].id + " is out of order");
+            }
+            pending.add(this.jobs[i]);
+        }
+    }
+
+    private void startWorker(PhysicsEngineType engine, int segments, int threads, String heap, double throttle)
+            throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Djava.awt.headless=true");
+        command.add("-Xmx" + heap);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardCoordinator.class.getName());
+        command.add("--worker");
+        command.add("--threads=" + threads);
+        command.add("--throttle=" + throttle);
+        // stderr is left to the console so worker failures are visible
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        Worker worker = new Worker(workers.size(), process);
+        worker.out.writeInt(MAGIC);
+        worker.out.writeInt(VERSION);
+        worker.out.writeByte(engine.ordinal());
+        worker.out.writeInt(MAX_BALLS);
+        worker.out.writeInt(segments);
+        worker.out.flush();
+        workers.add(worker);
+        Thread reader = new Thread(() -> read(worker), "shard-reader-" + worker.index);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // pull based: a worker only gets a new job when one of its window slots frees up, so a slow worker simply
+    // takes fewer jobs; once the queue is empty idle workers duplicate jobs that have run far longer than usual
+    private void run() throws InterruptedException {
+        List<Worker> targets = new ArrayList<>();
+        List<Job> assigned = new ArrayList<>();
+        for (; ; ) {
+            synchronized (this) {
+                while (completed < jobs.length) {
+                    boolean alive = false;
+                    for (Worker worker : workers) {
+                        alive |= worker.alive;
+                        while (worker.alive && worker.inFlight.size() < window) {
+                            Job job = next(worker);
+                            if (job == null) {
+                                break;
+                            }
+                            worker.inFlight.put(job.id, System.nanoTime());
+                            targets.add(worker);
+                            assigned.add(job);
+                        }
+                    }
+                    if (!alive) {
+                        throw new RuntimeException("All workers died with " + (jobs.length - completed)
+                                + " jobs left");
+                    }
+                    if (!assigned.isEmpty()) {
+                        break;
+                    }
+                    wait(10);
+                }
+                if (completed == jobs.length) {
+                    finished = true;
+                    return;
+                }
+            }
+            // the pipes are written outside the lock so result readers never wait on a full pipe
+            for (int i = 0; i < assigned.size(); i++) {
+                send(targets.get(i), assigned.get(i));
+            }
+            for (Worker worker : targets) {
+                try {
+                    worker.out.flush();
+                } catch (IOException e) {
+                    fail(worker, e);
+                }
+            }
+            targets.clear();
+            assigned.clear();
+        }
+    }
+
+    // called with the lock held
+    private Job next(Worker worker) {
+        // a job that was in flight on a lost worker runs alone, so that losing a worker again pins the blame on it
+        // rather than on whatever shared the window with it
+        if (holdsLostJob(worker)) {
+            return null;
+        }
+        Job job;
+        while ((job = pending.peek()) != null && results[job.id] != null) {
+            pending.poll();
+        }
+        if (job != null) {
+            if (job.losses > 0 && !worker.inFlight.isEmpty()) {
+                return null;
+            }
+            pending.poll();
+            job.copies++;
+            return job;
+        }
+        if (completed == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long threshold = Math.max(MIN_STRAGGLER_NANOS, (long) (straggler * latencyTotal / completed));
+        Job oldest = null;
+        long oldestSent = now - threshold;
+        for (Worker other : workers) {
+            if (other == worker) {
+                continue;
+            }
+            for (Map.Entry<Integer, Long> entry : other.inFlight.entrySet()) {
+                Job candidate = jobs[entry.getKey()];
+                if (entry.getValue() < oldestSent && candidate.copies < 2 && candidate.losses == 0
+                        && results[candidate.id] == null
+                        && !worker.inFlight.containsKey(candidate.id)) {
+                    oldest = candidate;
+                    oldestSent = entry.getValue();
+                }
+            }
+        }
+        if (oldest != null) {
+            oldest.copies++;
+            reissued++;
+        }
+        return oldest;
+    }
+
+    private boolean holdsLostJob(Worker worker) {
+        for (Integer id : worker.inFlight.keySet()) {
+            if (jobs[id].losses > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void send(Worker worker, Job job) {
+        try {
+            worker.out.write(job.payload);
+        } catch (IOException e) {
+            fail(worker, e);
+        }
+    }
+
+    private void read(Worker worker) {
+        try {
+            for (; ; ) {
+                int id;
+                try {
+                    id = worker.in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long nanos = worker.in.readLong();
+                Result result = Result.read(id, worker.index, nanos, worker.in);
+                synchronized (this) {
+                    Long sent = worker.inFlight.remove(id);
+                    worker.done++;
+                    worker.busyNanos += nanos;
+                    if (results[id] == null) {
+                        results[id] = result;
+                        completed++;
+                        if (sent != null) {
+                            latencyTotal += System.nanoTime() - sent;
+                        }
+                    } else {
+                        duplicates++;
+                    }
+                    notifyAll();
+                }
+            }
+            fail(worker, null);
+        } catch (IOException e) {
+            fail(worker, e);
+        }
+    }
+
+    // a dead worker's unfinished jobs go back to the front of the queue, unless they keep taking workers down with
+    // them, then they are recorded as failed rather than passed on to the next worker
+    private synchronized void fail(Worker worker, IOException cause) {
+        if (!worker.alive || finished) {
+            return;
+        }
+        worker.alive = false;
+        System.err.println("worker " + worker.index + " lost with " + worker.inFlight.size() + " jobs in flight"
+                + (cause == null ? "" : ": " + cause.getMessage()));
+        for (Integer id : worker.inFlight.keySet()) {
+            Job job = jobs[id];
+            if (results[id] != null) {
+                continue;
+            }
+            job.copies--;
+            job.losses++;
+            if (job.losses < MAX_LOSSES) {
+                pending.addFirst(job);
+            } else if (job.copies == 0) {
+                System.err.println("job " + id + " failed, it was in flight on " + job.losses + " lost workers");
+                results[id] = new Result(id, -1, 0, -1, 0);
+                completed++;
+            }
+        }
+        worker.inFlight.clear();
+        worker.process.destroy();
+        notifyAll();
+    }
+
+    private void shutdown() throws InterruptedException {
+        for (Worker worker : workers) {
+            try {
+                worker.out.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        for (Worker worker : workers) {
+            if (!worker.process.waitFor(5, TimeUnit.SECONDS)) {
+                worker.process.destroyForcibly();
+            }
+        }
+    }
+
+    private synchronized int failed() {
+        int failed = 0;
+        for (Result result : results) {
+            if (result.ticks < 0) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private synchronized void report(long elapsed) {
+        System.out.printf("%6s %8s %10s %12s%n", "worker", "jobs", "busy[ms]", "mean[ms]");
+        for (Worker worker : workers) {
+            System.out.printf(Locale.ROOT, "%6d %8d %10.0f %12.3f%s%n", worker.index, worker.done,
+                    worker.busyNanos / 1e6, worker.done == 0 ? 0 : worker.busyNanos / 1e6 / worker.done,
+                    worker.alive ? "" : " (lost)");
+        }
+
+        long pocketed = 0, ticks = 0;
+        int scratches = 0;
+        for (Result result : results) {
+            if (result.ticks >= 0) {
+                pocketed += result.getPocketedCount();
+                ticks += result.ticks;
+                scratches += result.isWhitePocketed() ? 1 : 0;
+            }
+        }
+        int succeeded = jobs.length - failed();
+        System.out.printf(Locale.ROOT, "%d jobs on %d workers in %.1f ms, %.0f jobs/s, %d reissued, %d duplicates, "
+                        + "%d failed%n", jobs.length, workers.size(), elapsed / 1e6, jobs.length * 1e9 / elapsed,
+                reissued, duplicates, jobs.length - succeeded);
+        if (succeeded > 0) {
+            System.out.printf(Locale.ROOT, "mean %.3f pocketed, %.1f%% scratches, %.0f ticks per shot%n",
+                    pocketed / (double) succeeded, scratches * 100.0 / succeeded, ticks / (double) succeeded);
+        }
+    }
+
+    // replays a few jobs in this process from the same encoded bytes, the results must match exactly
+    private boolean verify(Table table, PhysicsEngineType engine, int count) throws IOException {
+        int mismatches = 0, replayed = 0;
+        count = Math.min(count, jobs.length);
+        TableSnapshot snapshot = new TableSnapshot(MAX_BALLS, table.getCushions().size());
+        for (int i = 0; i < count; i++) {
+            // a job that took its workers down is not replayed, it could take this process down as well
+            if (jobs[i].losses >= MAX_LOSSES && results[i].ticks < 0) {
+                continue;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(jobs[i].payload));
+            in.readInt();
+            Shot shot = Shot.read(in, snapshot);
+            ShotOutcome outcome = null;
+            try {
+                outcome = shot.simulate(table, engine);
+            } catch (RuntimeException e) {
+                // the worker reports the same failure as a result without ticks
+            }
+            replayed++;
+            Result local = Result.of(i, -1, 0, outcome);
+            if (!local.matches(results[i])) {
+                mismatches++;
+                System.out.println("MISMATCH job " + i + " from worker " + results[i].worker);
+            }
+        }
+        if (replayed > 0) {
+            System.out.println("verified " + replayed + " jobs in process, " + mismatches + " mismatches");
+        }
+        return mismatches == 0;
+    }
+
+    // breaks from jittered white positions plus random open-table positions, as in the golden corpus
+    private static List<Job> generate(Table table, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        TableSnapshot snapshot = new TableSnapshot(MAX_BALLS, table.getCushions().size());
+        List<Job> jobs = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            List<Ball> balls;
+            double angle, power;
+            if (s % 3 == 2) {
+                balls = Racks.randomField(table, 2 + random.nextInt(15), random.nextLong());
+                angle = random.nextDouble() * 2 * Math.PI;
+                power = 50 + random.nextDouble() * 350;
+            } else {
+                balls = s % 3 == 0 ? Racks.nineBall(table) : Racks.eightBall(table);
+                Ball white = Racks.white(balls);
+                white.setPosition(white.getX() + (random.nextDouble() * 2 - 1) * 150, white.getY());
+                angle = Racks.breakAngle(balls) + Math.toRadians((random.nextDouble() * 2 - 1) * 3);
+                power = 100 + random.nextDouble() * 300;
+            }
+            snapshot.capture(table, balls);
+            jobs.add(new Job(s, Math.cos(angle), Math.sin(angle), PhysicsParams.DEFAULT.getBaseVelocity() * power,
+                    snapshot));
+        }
+        return jobs;
+    }
+
+    // worker side: decodes jobs on the stdin thread, simulates them on a pool and answers on stdout
+    private static void work(int threads, double throttle) throws IOException, InterruptedException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in, 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 1 << 16));
+        // stdout carries the results, anything printed by accident goes to stderr instead
+        System.setOut(System.err);
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new RuntimeException("Not a shard coordinator");
+        }
+        PhysicsEngineType engine = PhysicsEngineType.values()[in.readUnsignedByte()];
+        TableSnapshot snapshot = new TableSnapshot(in.readInt(), in.readInt());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Table table = null;
+        for (; ; ) {
+            int id;
+            try {
+                id = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            Shot shot;
+            try {
+                shot = Shot.read(in, snapshot);
+            } catch (RuntimeException e) {
+                // the stream cannot be framed past a job that does not decode, the pool threads would keep a
+                // worker that only returned from here alive
+                System.err.println("job " + id + " unreadable: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            // every job of a run shares the table, so it is only rebuilt when the geometry changes
+            if (table == null || !snapshot.matches(table)) {
+                table = snapshot.createTable();
+            }
+            Table shotTable = table;
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                ShotOutcome outcome = null;
+                try {
+                    outcome = shot.simulate(shotTable, engine);
+                } catch (RuntimeException e) {
+                    System.err.println("job " + id + " failed: " + e.getMessage());
+                }
+                long elapsed = System.nanoTime() - start;
+                if (throttle > 1) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep((long) ((throttle - 1) * elapsed));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Result result = Result.of(id, -1, elapsed, outcome);
+                synchronized (out) {
+                    try {
+                        result.write(out);
+                        out.flush();
+                    } catch (IOException e) {
+                        // the coordinator went away, nothing left to answer to
+                        System.exit(1);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        synchronized (out) {
+            out.flush();
+        }
+    }
+
+    // job frame: id, strike direction and velocity, then the table snapshot with the balls; encoded once so a
+    // reissue sends the same bytes
+    public static final class Job {
+        private final int id;
+        private final byte[] payload;
+        private int copies = 0, losses = 0;
+
+        public Job(int id, double directionX, double directionY, double velocity, TableSnapshot snapshot)
+                throws IOException {
+            this.id = id;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(28 + snapshot.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(id);
+            out.writeDouble(directionX);
+            out.writeDouble(directionY);
+            out.writeDouble(velocity);
+            snapshot.writeTo(out);
+            out.flush();
+            this.payload = bytes.toByteArray();
+        }
+    }
+
+    private static final class Shot {
+        private final List<Ball> balls;
+        private final double directionX, directionY, velocity;
+
+        private Shot(List<Ball> balls, double directionX, double directionY, double velocity) {
+            this.balls = balls;
+            this.directionX = directionX;
+            this.directionY = directionY;
+            this.velocity = velocity;
+        }
+
+        private static Shot read(DataInput in, TableSnapshot snapshot) throws IOException {
+            double directionX = in.readDouble();
+            double directionY = in.readDouble();
+            double velocity = in.readDouble();
+            snapshot.readFrom(in);
+            return new Shot(snapshot.createBalls(), directionX, directionY, velocity);
+        }
+
+        private ShotOutcome simulate(Table table, PhysicsEngineType engine) {
+            ShotSimulator simulator = new ShotSimulator(table, null, FRAME_TIME, MAX_TICKS, PhysicsParams.DEFAULT,
+                    engine);
+            return simulator.simulate(balls, directionX, directionY, velocity);
+        }
+    }
+
+    // result frame: id, compute time, ticks (-1 when the shot failed), then number, x, y and a pocket flag per ball
+    private static final class Result {
+        private final int id, worker;
+        private final long nanos;
+        private final int ticks;
+        private final int[] numbers;
+        private final double[] x, y;
+        private final boolean[] pocketed;
+
+        private Result(int id, int worker, long nanos, int ticks, int size) {
+            this.id = id;
+            this.worker = worker;
+            this.nanos = nanos;
+            this.ticks = ticks;
+            this.numbers = new int[size];
+            this.x = new double[size];
+            this.y = new double[size];
+            this.pocketed = new boolean[size];
+        }
+
+        private static Result of(int id, int worker, long nanos, ShotOutcome outcome) {
+            Result result = new Result(id, worker, nanos, outcome == null ? -1 : outcome.getTicks(),
+                    outcome == null ? 0 : outcome.size());
+            for (int i = 0; i < result.numbers.length; i++) {
+                result.numbers[i] = outcome.getNumber(i);
+                result.x[i] = outcome.getX(i);
+                result.y[i] = outcome.getY(i);
+                result.pocketed[i] = outcome.isPocketed(i);
+            }
+            return result;
+        }
+
+        private static Result read(int id, int worker, long nanos, DataInput in) throws IOException {
+            int ticks = in.readInt();
+            Result result = new Result(id, worker, nanos, ticks, in.readUnsignedShort());
+            for (int i = 0; i < result.numbers.length; i++) {
+                result.numbers[i] = in.readInt();
+                result.x[i] = in.readDouble();
+                result.y[i] = in.readDouble();
+                result.pocketed[i] = in.readBoolean();
+            }
+            return result;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(id);
+            out.writeLong(nanos);
+            out.writeInt(ticks);
+            out.writeShort(numbers.length);
+            for (int i = 0; i < numbers.length; i++) {
+                out.writeInt(numbers[i]);
+                out.writeDouble(x[i]);
+                out.writeDouble(y[i]);
+                out.writeBoolean(pocketed[i]);
+            }
+        }
+
+        private int getPocketedCount() {
+            int count = 0;
+            for (int i = 0; i < numbers.length; i++) {
+                if (pocketed[i] && numbers[i] != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private boolean isWhitePocketed() {
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] == 0) {
+                    return pocketed[i];
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(Result other) {
+            if (ticks != other.ticks || numbers.length != other.numbers.length) {
+                return false;
+            }
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] != other.numbers[i] || x[i] != other.x[i] || y[i] != other.y[i]
+                        || pocketed[i] != other.pocketed[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Worker {
+        private final int index;
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        // guarded by the coordinator; job id to the time it was sent, in send order
+        private final Map<Integer, Long> inFlight = new LinkedHashMap<>();
+        private boolean alive = true;
+        private int done = 0;
+        private long busyNanos = 0;
+
+        private Worker(int index, Process process) {
+            this.index = index;
+            this.process = process;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 1 << 16));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream(), 1 << 16));
+        }
+    }
+}
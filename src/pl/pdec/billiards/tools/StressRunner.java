@@ -0,0 +1,150 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class StressRunner {
+    private static final double FRAME_TIME = 1 / 60.0;
+
+    public static void main(String... args) {
+        Map<String, String> options = parseOptions(args);
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "300"));
+        double budgetSeconds = Double.parseDouble(options.getOrDefault("budget", "20"));
+        int threadLimit = Integer.parseInt(options.getOrDefault("thread-limit", "1024"));
+        int pairwiseLimit = Integer.parseInt(options.getOrDefault("pairwise-limit", "20000"));
+        String[] fields = options.getOrDefault("fields", "100,1000,10000,100000").split(",");
+
+        List<String> scenarios = new ArrayList<>();
+        scenarios.add("9-ball");
+        scenarios.add("8-ball");
+        scenarios.add("snooker");
+        for (String field : fields) {
+            scenarios.add("field-" + field.trim());
+        }
+
+        System.out.printf("%-14s %7s %-9s %-8s %7s %6s %9s %9s %9s %9s %10s%n",
+                "scenario", "balls", "engine", "mode", "threads", "ticks",
+                "p50[us]", "p90[us]", "p99[us]", "max[us]", "bytes/ball");
+        for (String scenario : scenarios) {
+            for (PhysicsEngineType engine : PhysicsEngineType.values()) {
+                run(scenario, engine, ticks, budgetSeconds, threadLimit, pairwiseLimit);
+            }
+        }
+    }
+
+    private static void run(String scenario, PhysicsEngineType engine, int ticks, double budgetSeconds, int threadLimit,
+                            int pairwiseLimit) {
+        long allocatedBefore = allocatedBytes();
+        Table table;
+        List<Ball> balls;
+        if (scenario.startsWith("field-")) {
+            int count = Integer.parseInt(scenario.substring("field-".length()));
+            if (engine.isPairwise() && count > pairwiseLimit) {
+                // these engines test every pair of balls, a single tick would not fit in any sane budget
+                System.out.printf("%-14s %7d %-9s skipped, above --pairwise-limit=%d%n",
+                        scenario, count, engine.name().toLowerCase(), pairwiseLimit);
+                return;
+            }
+            table = Racks.tableFor(count);
+            balls = Racks.randomField(table, count, 42);
+            Random random = new Random(7);
+            for (Ball ball : balls) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                ball.setDirection(Math.cos(angle), Math.sin(angle));
+                ball.setVelocity(200 + random.nextDouble() * 800);
+            }
+        } else {
+            table = new Table(0, 0, 450, 600);
+            balls = Racks.rack(table, scenario);
+            Racks.aimBreak(balls, 0, 3000);
+        }
+
+        int count = balls.size();
+        boolean threaded = engine.isThreadable() && count <= threadLimit;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        PhysicsEngine physics = engine.create(table, balls, threaded);
+        long bytesPerBall = (allocatedBytes() - allocatedBefore) / count;
+
+        AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        LatencyRecorder latencies = new LatencyRecorder(ticks);
+        long deadline = System.nanoTime() + (long) (budgetSeconds * 1e9);
+        double t = 0;
+        int tick = 0, substepsDone = 0, substeps = 0;
+        while (tick < ticks && System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            substeps = substepper.substeps(balls, FRAME_TIME);
+            // one tick of a large field can take seconds, so the budget is checked between the substeps as well
+            for (substepsDone = 0; substepsDone < substeps && (substepsDone == 0 || System.nanoTime() < deadline);
+                 substepsDone++) {
+                physics.integrate(t, FRAME_TIME / substeps);
+                balls.removeIf(Ball::isInPocket);
+                t += FRAME_TIME / substeps;
+            }
+            if (substepsDone < substeps) {
+                break;
+            }
+            latencies.record(System.nanoTime() - start);
+            tick++;
+        }
+        int peakThreads = threads.getPeakThreadCount();
+        physics.shutdown();
+        awaitThreads(threads, threadsBefore);
+
+        long[] p = latencies.percentiles(0.5, 0.9, 0.99, 1.0);
+        // a tick cut short by the budget is not in the percentiles, it is reported after them
+        String partial = substepsDone < substeps
+                ? String.format("  budget spent %d/%d substeps into tick %d", substepsDone, substeps, tick + 1) : "";
+        System.out.printf("%-14s %7d %-9s %-8s %7d %6d %9d %9d %9d %9d %10d%s%n",
+                scenario, count, engine.name().toLowerCase(), threaded ? "threaded" : "headless",
+                peakThreads, tick, p[0] / 1000, p[1] / 1000, p[2] / 1000, p[3] / 1000, bytesPerBall, partial);
+    }
+
+    private static void awaitThreads(ThreadMXBean threads, int count) {
+        // let the workers of the previous run exit so they do not skew the next one
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (threads.getThreadCount() > count && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        // bytes this thread allocated while building the balls and the engine, worker stacks are not included
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    static Map<String, String> parseOptions(String... args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new RuntimeException("Unknown argument " + arg + ", expected --name=value");
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,205 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.TournamentGrid;
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Racks;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.components.TableSnapshot;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+import pl.pdec.billiards.logic.AdaptiveSubstepper;
+import pl.pdec.billiards.logic.PhysicsEngine;
+import pl.pdec.billiards.logic.PhysicsEngineType;
+import pl.pdec.billiards.logic.PhysicsParams;
+import pl.pdec.billiards.logic.ShotSimulator;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// a tournament of bots, every match on its own table, all shown in one grid; --headless drives the grid without a
+// display and reports what the frames cost the event dispatch thread
+public class TournamentDemo {
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    public static void main(String... args) throws InterruptedException, InvocationTargetException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        int tables = Integer.parseInt(options.getOrDefault("tables", "64"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int width = Integer.parseInt(options.getOrDefault("width", "1600"));
+        int height = Integer.parseInt(options.getOrDefault("height", "1000"));
+        double budget = Double.parseDouble(options.getOrDefault("budget", "8"));
+        boolean adaptive = Boolean.parseBoolean(options.getOrDefault("adaptive", "true"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "20"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        PhysicsEngineType engine = PhysicsEngineType.valueOf(
+                options.getOrDefault("engine", "mechanic").toUpperCase(Locale.ROOT));
+
+        Table table = new Table(0, 0, 450, 600);
+        TournamentGrid grid = new TournamentGrid(table, (long) (budget * 1e6), adaptive);
+        ScheduledExecutorService matches = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "match");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < tables; i++) {
+            Match match = new Match(table, engine, seed + i);
+            match.tile = grid.addTable("Table " + (i + 1), match.rack);
+            matches.scheduleAtFixedRate(match::tick, 0, FRAME_NANOS, TimeUnit.NANOSECONDS);
+        }
+
+        if (options.containsKey("headless") || GraphicsEnvironment.isHeadless()) {
+            runHeadless(grid, width, height, seconds);
+            matches.shutdownNow();
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Tournament");
+            frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+            frame.add(grid);
+            frame.setSize(width, height);
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            grid.start();
+        });
+    }
+
+    // refreshes the grid at 60 Hz and paints the whole of it into an image every frame, which costs more than
+    // painting the tiles that changed the way Swing would
+    private static void runHeadless(TournamentGrid grid, int width, int height, double seconds)
+            throws InterruptedException, InvocationTargetException {
+        BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        LatencyRecorder frameTimes = new LatencyRecorder(10_000);
+        SwingUtilities.invokeAndWait(() -> grid.setSize(width, height));
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        long frames = 0, overBudget = 0;
+        long next = System.nanoTime();
+        while (next < end) {
+            long[] nanos = new long[1];
+            SwingUtilities.invokeAndWait(() -> {
+                long start = System.nanoTime();
+                grid.refresh();
+                Graphics2D g = screen.createGraphics();
+                grid.paint(g);
+                g.dispose();
+                nanos[0] = System.nanoTime() - start;
+            });
+            frameTimes.record(nanos[0]);
+            frames++;
+            if (nanos[0] > FRAME_NANOS) {
+                overBudget++;
+            }
+            next += FRAME_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+        }
+
+        long[] frame = frameTimes.percentiles(0.5, 0.99, 1.0);
+        long[] refresh = grid.getRefreshTimes().percentiles(0.5, 0.99);
+        long[] paint = grid.getPaintTimes().percentiles(0.5, 0.99);
+        System.out.printf(Locale.ROOT, "%d tables at %dx%d, %d frames in %.0f s%n", grid.getTableCount(), width,
+                height, frames, seconds);
+        System.out.printf(Locale.ROOT, "frame   p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms, %d over %.1f ms%n",
+                frame[0] / 1e6, frame[1] / 1e6, frame[2] / 1e6, overBudget, FRAME_NANOS / 1e6);
+        System.out.printf(Locale.ROOT, "refresh p50 %6.2f ms  p99 %6.2f ms%n", refresh[0] / 1e6, refresh[1] / 1e6);
+        System.out.printf(Locale.ROOT, "paint   p50 %6.2f ms  p99 %6.2f ms%n", paint[0] / 1e6, paint[1] / 1e6);
+        System.out.printf(Locale.ROOT, "tiles   %.1f redrawn and %.1f deferred per frame%n",
+                grid.getTilesRendered() / (double) frames, grid.getTilesDeferred() / (double) frames);
+    }
+
+    // a bot that takes its time at the table, then hits the white at a random ball with random power; the white is
+    // put back on its spot after a scratch and the rack is set up again once it is cleared
+    private static final class Match {
+        private final Table table;
+        private final PhysicsEngineType engineType;
+        private final Random random;
+        private final List<Ball> rack;
+        private final List<Ball> onTable;
+        private final TableSnapshot racked;
+        private final AdaptiveSubstepper substepper = new AdaptiveSubstepper();
+        private final Ball white;
+        private final int whiteIndex;
+        private PhysicsEngine engine;
+        private TournamentGrid.Tile tile;
+        private double t = 0;
+        private boolean moving = false;
+        private long restUntil;
+
+        private Match(Table table, PhysicsEngineType engineType, long seed) {
+            this.table = table;
+            this.engineType = engineType;
+            this.random = new Random(seed);
+            this.rack = random.nextBoolean() ? Racks.nineBall(table) : Racks.eightBall(table);
+            this.onTable = new ArrayList<>(rack);
+            this.racked = TableSnapshot.of(table, rack);
+            this.white = Racks.white(rack);
+            this.whiteIndex = rack.indexOf(white);
+            this.engine = engineType.create(table, onTable, false);
+            this.restUntil = System.nanoTime() + (long) (random.nextDouble() * 3e9);
+        }
+
+        private void tick() {
+            if (!moving) {
+                if (System.nanoTime() < restUntil) {
+                    return;
+                }
+                shoot();
+            }
+            int substeps = substepper.substeps(onTable, FRAME_TIME);
+            for (int i = 0; i < substeps; i++) {
+                engine.integrate(t, FRAME_TIME / substeps);
+                onTable.removeIf(Ball::isInPocket);
+                t += FRAME_TIME / substeps;
+            }
+            moving = ShotSimulator.isMoving(onTable);
+            if (!moving) {
+                setUp();
+                restUntil = System.nanoTime() + 1_000_000_000L + (long) (random.nextDouble() * 3e9);
+            }
+            tile.publish(rack);
+        }
+
+        private void shoot() {
+            Ball target = onTable.get(random.nextInt(onTable.size()));
+            if (target == white) {
+                target = onTable.get((onTable.indexOf(white) + 1) % onTable.size());
+            }
+            double angle = Math.atan2(target.getY() - white.getY(), target.getX() - white.getX())
+                    + Math.toRadians(random.nextGaussian() * 3);
+            white.setDirection(Math.cos(angle), Math.sin(angle));
+            white.setVelocity(PhysicsParams.DEFAULT.getBaseVelocity() * (50 + random.nextDouble() * 250));
+            moving = true;
+        }
+
+        // balls that go back on the table need a new engine, the engines keep their own view of the balls
+        private void setUp() {
+            if (onTable.size() <= 1) {
+                racked.restore(rack);
+            } else if (white.isInPocket()) {
+                white.getState().set(racked.getX(whiteIndex), racked.getY(whiteIndex), 0, 0, 0, false);
+            } else {
+                return;
+            }
+            onTable.clear();
+            for (Ball ball : rack) {
+                if (!ball.isInPocket()) {
+                    onTable.add(ball);
+                }
+            }
+            engine.shutdown();
+            engine = engineType.create(table, onTable, false);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package pl.pdec.billiards.tools;
+
+import pl.pdec.billiards.Game;
+import pl.pdec.billiards.components.Ball;
+import pl.pdec.billiards.components.Table;
+import pl.pdec.billiards.helpers.LatencyRecorder;
+import pl.pdec.billiards.logic.PhysicsWarmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class WarmupBenchmark {
+    private static final double FRAME_TIME = 1 / 60.0;
+    private static final String RESULT_PREFIX = "result ";
+    private static final int BREAK_TICKS = 10;
+
+    // JIT state lives in the JVM, so every measurement runs the first break in a fresh child process
+    public static void main(String... args) throws IOException, InterruptedException {
+        Map<String, String> options = StressRunner.parseOptions(args);
+        String child = options.get("child");
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "120"));
+        if (child != null) {
+            measure(Boolean.parseBoolean(child), ticks);
+            return;
+        }
+
+        int runs = Integer.parseInt(options.getOrDefault("runs", "7"));
+        System.out.printf("%-8s %4s %10s %10s %10s %10s %10s%n",
+                "mode", "run", "first[us]", "break[us]", "p50[us]", "max[us]", "warmup[ms]");
+        for (boolean warm : new boolean[]{false, true}) {
+            long[][] results = new long[runs][];
+            for (int run = 0; run < runs; run++) {
+                results[run] = spawn(warm, ticks);
+                System.out.printf("%-8s %4d %10d %10d %10d %10d %10d%n", warm ? "warm" : "cold", run + 1,
+                        results[run][0], results[run][1], results[run][2], results[run][3], results[run][4]);
+            }
+            long[] median = new long[5];
+            for (int column = 0; column < median.length; column++) {
+                long[] values = new long[runs];
+                for (int run = 0; run < runs; run++) {
+                    values[run] = results[run][column];
+                }
+                Arrays.sort(values);
+                median[column] = values[runs / 2];
+            }
+            System.out.printf("%-8s %4s %10d %10d %10d %10d %10d%n", warm ? "warm" : "cold", "med",
+                    median[0], median[1], median[2], median[3], median[4]);
+        }
+    }
+
+    private static long[] spawn(boolean warm, int ticks) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Djava.awt.headless=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WarmupBenchmark.class.getName());
+        command.add("--child=" + warm);
+        command.add("--ticks=" + ticks);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = Arrays.stream(line.substring(RESULT_PREFIX.length()).split(" "))
+                            .mapToLong(Long::parseLong).toArray();
+                } else {
+                    System.err.println(line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new RuntimeException("Benchmark child exited with " + process.exitValue());
+        }
+        return result;
+    }
+
+    // the same path as the sample: a threaded Game on the default table, broken straight at the rack
+    private static void measure(boolean warm, int ticks) {
+        long warmupStart = System.nanoTime();
+        if (warm) {
+            PhysicsWarmup.warmUp(200, 2);
+        }
+        long warmupTime = System.nanoTime() - warmupStart;
+
+        Game game = new Game();
+        game.setTable(new Table(175, 100, 450, 600));
+        game.reset();
+        Ball white = game.getWhiteBall();
+        white.setDirection(0, -1);
+        white.setVelocity(3000);
+
+        LatencyRecorder latencies = new LatencyRecorder(ticks);
+        long first = 0, breakTotal = 0;
+        int breakTicks = 0;
+        double t = 0;
+        for (int tick = 0; tick < ticks && !game.isGameEnded(); tick++) {
+            long start = System.nanoTime();
+            game.integrate(t, FRAME_TIME);
+            long elapsed = System.nanoTime() - start;
+            if (tick == 0) {
+                first = elapsed;
+            }
+            // the first ticks after the strike carry the collision spike the warm-up is meant to remove
+            if (tick < BREAK_TICKS) {
+                breakTotal += elapsed;
+                breakTicks++;
+            }
+            latencies.record(elapsed);
+            t += FRAME_TIME;
+        }
+        long[] p = latencies.percentiles(0.5, 1.0);
+        System.out.println(RESULT_PREFIX + first / 1000 + " " + breakTotal / Math.max(1, breakTicks) / 1000 + " "
+                + p[0] / 1000 + " " + p[1] / 1000 + " " + warmupTime / 1_000_000);
+        // the game worker threads are not daemons
+        System.exit(0);
+    }
+}